@@ -20,7 +20,10 @@ package es.redmic.commandslib.aggregate;
  * #L%
  */
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -31,6 +34,8 @@ import es.redmic.brokerlib.avro.fail.PrepareRollbackEvent;
 import es.redmic.brokerlib.avro.fail.RollbackFailedEvent;
 import es.redmic.commandslib.exceptions.HistoryNotFoundException;
 import es.redmic.commandslib.exceptions.ItemLockedException;
+import es.redmic.commandslib.streaming.statestore.EventHeader;
+import es.redmic.commandslib.streaming.statestore.LazyEvent;
 import es.redmic.exception.data.ItemNotFoundException;
 import es.redmic.exception.settings.SettingsChangeForbiddenException;
 
@@ -42,6 +47,13 @@ public abstract class Aggregate {
 
 	private Integer version;
 
+	// Últimos estados leídos del store por id. Se leen una sola vez durante la
+	// vida del aggregate (un comando) y el evento completo solo si se necesita
+	private final Map<String, LazyEvent> states = new HashMap<>();
+
+	// Id del estado aplicado con loadFromHistory
+	private String hydratedId;
+
 	protected static Logger logger = LogManager.getLogger();
 
 	/*
@@ -51,11 +63,20 @@ public abstract class Aggregate {
 
 		if (id != null) {
 			// comprueba que el id no exista
-			Event state = getItemFromStateStore(id);
+			LazyEvent state = getLazyState(id);
 
 			if (state != null) {
 
-				loadFromHistory(state);
+				// Un item bloqueado se rechaza sin decodificar el evento
+				check(state.getHeader());
+
+				Event event = state.getEvent();
+
+				// Eliminado del store después de leer la cabecera
+				if (event == null)
+					return false;
+
+				hydrate(id, event);
 
 				if (!isDeleted()) {
 					return true;
@@ -71,7 +92,7 @@ public abstract class Aggregate {
 	 */
 	protected Event getStateFromHistory(String id) {
 
-		Event state = getItemFromStateStore(id);
+		Event state = getState(id);
 
 		if (state == null) {
 			logger.error("Intentando modificar(editar o eliminar) un elemento del cual no se tiene historial, ", id);
@@ -81,6 +102,123 @@ public abstract class Aggregate {
 		return state;
 	}
 
+	/*
+	 * Obtiene el último estado del item y, si no se ha hecho ya, lo aplica para
+	 * restaurar el aggregate. Reutiliza la lectura hecha en exist
+	 */
+	protected Event loadStateFromHistory(String id) {
+
+		check(getStateHeaderFromHistory(id));
+
+		Event state = getStateFromHistory(id);
+
+		hydrate(id, state);
+
+		return state;
+	}
+
+	/*
+	 * Cabecera del último estado del item, que debe existir
+	 */
+	protected EventHeader getStateHeaderFromHistory(String id) {
+
+		LazyEvent state = getLazyState(id);
+
+		if (state == null) {
+			logger.error("Intentando modificar(editar o eliminar) un elemento del cual no se tiene historial, ", id);
+			throw new HistoryNotFoundException(EventTypes.UPDATE + " | " + EventTypes.DELETE, id);
+		}
+
+		return state.getHeader();
+	}
+
+	/*
+	 * Comprueba solo con la cabecera del último estado que el item no está
+	 * bloqueado y que userId es su autor, de forma que los comandos rechazados no
+	 * decodifican el evento completo. Los items borrados no se deciden aquí: se
+	 * tratan al aplicar su estado con loadFromHistory, como hace cada aggregate
+	 */
+	protected void checkHeaderFromHistory(String id, String userId) {
+
+		EventHeader header = getStateHeaderFromHistory(id);
+
+		check(header);
+
+		if (EventTypes.DELETED.equals(header.getType()))
+			return;
+
+		authorshipCheck(userId, header.getUserId());
+	}
+
+	/*
+	 * Último estado del item (null si no existe). Solo se lee del store la primera
+	 * vez que se pide cada id
+	 */
+	protected Event getState(String id) {
+
+		LazyEvent state = getLazyState(id);
+
+		return state != null ? state.getEvent() : null;
+	}
+
+	/*
+	 * Último estado del item (null si no existe) con el evento completo pendiente
+	 * de leer. Si el store conoce la cabecera, el evento no se decodifica hasta que
+	 * se pide
+	 */
+	protected LazyEvent getLazyState(String id) {
+
+		if (states.containsKey(id))
+			return states.get(id);
+
+		LazyEvent state;
+
+		EventHeader header = getItemHeaderFromStateStore(id);
+
+		if (header != null) {
+			state = new LazyEvent(header, () -> getItemMatchingHeader(id, header));
+		} else {
+			Event event = getItemFromStateStore(id);
+			state = event != null ? new LazyEvent(event) : null;
+		}
+
+		states.put(id, state);
+		return state;
+	}
+
+	/*
+	 * Lee el evento completo de un estado cuya cabecera ya se ha comprobado. Si el
+	 * item ha cambiado desde que se leyó la cabecera, se vuelve a comprobar el
+	 * bloqueo con el evento leído. Si se ha eliminado del store (tombstone) se
+	 * trata como inexistente
+	 */
+	private Event getItemMatchingHeader(String id, EventHeader header) {
+
+		Event event = getItemFromStateStore(id);
+
+		if (event == null) {
+			logger.warn("Item " + id + " eliminado del store después de leer su cabecera");
+			return null;
+		}
+
+		if (!Objects.equals(header.getVersion(), event.getVersion())
+				|| !Objects.equals(header.getType(), event.getType())) {
+			logger.warn("Item " + id + " modificado después de leer su cabecera. Versión " + header.getVersion()
+					+ " -> " + event.getVersion());
+			check(event);
+		}
+		return event;
+	}
+
+	private void hydrate(String id, Event state) {
+
+		if (id.equals(hydratedId))
+			return;
+
+		loadFromHistory(state);
+		hydratedId = id;
+	}
+
 	protected void checkState(String id, String eventType) {
 
 		if (this.deleted) {
@@ -91,12 +229,21 @@ public abstract class Aggregate {
 
 	protected void check(Event event) {
 
-		if (isLocked(event.getType()) && !event.getType().equals(EventTypes.DELETED)) {
+		check(event.getType(), event.getAggregateId());
+	}
+
+	protected void check(EventHeader header) {
 
-			logger.error("Intentando modificar un elemento bloqueado por una edición en curso, ",
-					event.getAggregateId());
-			logger.error("Item bloqueado por un evento de tipo: " + event.getType());
-			throw new ItemLockedException("id", event.getAggregateId());
+		check(header.getType(), header.getAggregateId());
+	}
+
+	private void check(String eventType, String aggregateId) {
+
+		if (isLocked(eventType) && !eventType.equals(EventTypes.DELETED)) {
+
+			logger.error("Intentando modificar un elemento bloqueado por una edición en curso, ", aggregateId);
+			logger.error("Item bloqueado por un evento de tipo: " + eventType);
+			throw new ItemLockedException("id", aggregateId);
 		}
 	}
 
@@ -131,6 +278,15 @@ public abstract class Aggregate {
 	 */
 	protected abstract Event getItemFromStateStore(String id);
 
+	/*
+	 * Función que obtiene la cabecera del item con id pasado sin decodificar el
+	 * evento. Null si el store no la conoce, en cuyo caso se usa
+	 * getItemFromStateStore
+	 */
+	protected EventHeader getItemHeaderFromStateStore(String id) {
+		return null;
+	}
+
 	/*
 	 * Función que a partir de todos los eventos generados sobre un item, aplica
 	 * todos los cambios para restaurar el estado actual del item. Si queremos
@@ -153,6 +309,7 @@ public abstract class Aggregate {
 
 		setVersion(null);
 		setAggregateId(null);
+		hydratedId = null;
 	}
 
 	public boolean isDeleted() {
@@ -0,0 +1,117 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Política de timeout de las confirmaciones. Si está activada, calcula el
+ * timeout de cada tipo de comando como un múltiplo del p99 de la latencia de
+ * confirmación observada, acotado entre un mínimo y un máximo. Mientras no haya
+ * suficientes muestras (o si está desactivada) se usa el timeout por defecto.
+ */
+public class AdaptiveTimeoutPolicy {
+
+	private static final double PERCENTILE = 0.99;
+
+	// Número de muestras a partir del cual se aplica el decaimiento
+	private static final long DECAY_THRESHOLD = 10000;
+
+	private final boolean enabled;
+
+	private final long defaultTimeoutMS;
+
+	private final double multiplier;
+
+	private final long minTimeoutMS;
+
+	private final long maxTimeoutMS;
+
+	private final long minSamples;
+
+	private final Map<String, LatencySketch> sketches = new ConcurrentHashMap<>();
+
+	public AdaptiveTimeoutPolicy(long defaultTimeoutMS) {
+		this(false, defaultTimeoutMS, 1, defaultTimeoutMS, defaultTimeoutMS, 0);
+	}
+
+	public AdaptiveTimeoutPolicy(boolean enabled, long defaultTimeoutMS, double multiplier, long minTimeoutMS,
+			long maxTimeoutMS, long minSamples) {
+
+		assert !enabled || (multiplier > 0 && minTimeoutMS > 0 && minTimeoutMS <= maxTimeoutMS);
+
+		this.enabled = enabled;
+		this.defaultTimeoutMS = defaultTimeoutMS;
+		this.multiplier = multiplier;
+		this.minTimeoutMS = minTimeoutMS;
+		this.maxTimeoutMS = maxTimeoutMS;
+		this.minSamples = minSamples;
+	}
+
+	public long getTimeoutMS(String commandType) {
+
+		if (!enabled)
+			return defaultTimeoutMS;
+
+		LatencySketch sketch = sketches.get(String.valueOf(commandType));
+
+		if (sketch == null || sketch.getCount() < minSamples)
+			return defaultTimeoutMS;
+
+		long p99 = sketch.getPercentile(PERCENTILE);
+
+		return Math.min(maxTimeoutMS, Math.max(minTimeoutMS, (long) Math.ceil(p99 * multiplier)));
+	}
+
+	/*
+	 * Registra la latencia de una confirmación recibida (con éxito o error
+	 * enviado desde la vista)
+	 */
+	public void record(String commandType, long latencyMS) {
+
+		if (!enabled)
+			return;
+
+		sketches.computeIfAbsent(String.valueOf(commandType), k -> new LatencySketch(maxTimeoutMS, DECAY_THRESHOLD))
+				.record(latencyMS);
+	}
+
+	/*
+	 * Registra un comando sin confirmación en plazo. Su latencia real es
+	 * desconocida pero al menos igual al plazo, por lo que se registra éste. Si se
+	 * descartasen, el p99 quedaría por debajo de la latencia real y el timeout no
+	 * podría ampliarse cuando las confirmaciones se retrasan.
+	 */
+	public void recordTimeout(String commandType, long timeoutMS) {
+
+		record(commandType, timeoutMS);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public long getDefaultTimeoutMS() {
+		return defaultTimeoutMS;
+	}
+}
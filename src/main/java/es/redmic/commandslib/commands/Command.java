@@ -22,4 +22,39 @@ package es.redmic.commandslib.commands;
 
 public abstract class Command {
 
+	// Clave proporcionada por el cliente para identificar reintentos de un mismo
+	// comando
+	private String idempotencyKey;
+
+	// Id del elemento sobre el que actúa la petición, tal como lo indica el
+	// cliente (null si la petición crea un elemento nuevo)
+	private String idempotencyTarget;
+
+	// Huella del contenido de la petición para detectar claves reutilizadas con
+	// un contenido distinto
+	private String idempotencyFingerprint;
+
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+	public void setIdempotencyKey(String idempotencyKey) {
+		this.idempotencyKey = idempotencyKey;
+	}
+
+	public String getIdempotencyTarget() {
+		return idempotencyTarget;
+	}
+
+	public void setIdempotencyTarget(String idempotencyTarget) {
+		this.idempotencyTarget = idempotencyTarget;
+	}
+
+	public String getIdempotencyFingerprint() {
+		return idempotencyFingerprint;
+	}
+
+	public void setIdempotencyFingerprint(String idempotencyFingerprint) {
+		this.idempotencyFingerprint = idempotencyFingerprint;
+	}
 }
@@ -0,0 +1,238 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import es.redmic.commandslib.exceptions.CommandRejectedException;
+
+/*
+ * Control de admisión de comandos. Limita el número de peticiones pendientes
+ * de confirmación (en total y por tipo de comando) y rechaza inmediatamente las
+ * que superan el límite, en lugar de dejar que esperen hasta el timeout y
+ * generen un rollback que agrava la sobrecarga.
+ * 
+ * Opcionalmente el límite total es adaptativo (AIMD): se reduce de forma
+ * multiplicativa cuando una confirmación tarda más que la latencia objetivo o
+ * expira, y crece de forma aditiva (aprox. +1 por cada "limit" confirmaciones
+ * rápidas) hasta el máximo configurado.
+ */
+public class CommandAdmissionController {
+
+	protected static Logger logger = LogManager.getLogger();
+
+	// @formatter:off
+
+	public static final String REJECTED_BY_HANDLER = "handler",
+			REJECTED_BY_COMMAND = "command";
+
+	private static final double DECREASE_FACTOR = 0.9;
+
+	// @formatter:on
+
+	// Límites configurados (0 = sin límite)
+	private final int maxOutstanding;
+
+	private final int maxOutstandingPerCommand;
+
+	// Límite adaptativo
+	private final boolean adaptive;
+
+	private final int minLimit;
+
+	private final long targetLatencyNanos;
+
+	private volatile double limit;
+
+	// Lock en lugar de synchronized para no fijar el hilo portador cuando se
+	// libera desde un hilo virtual
+	private final ReentrantLock limitLock = new ReentrantLock();
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	private final Map<String, AtomicInteger> outstandingByCommand = new ConcurrentHashMap<>();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	public CommandAdmissionController(int maxOutstanding, int maxOutstandingPerCommand) {
+		this(maxOutstanding, maxOutstandingPerCommand, false, 0, 0);
+	}
+
+	public CommandAdmissionController(int maxOutstanding, int maxOutstandingPerCommand, boolean adaptive,
+			int minLimit, long targetLatencyMS) {
+
+		assert maxOutstanding >= 0;
+		assert maxOutstandingPerCommand >= 0;
+		assert !adaptive || (maxOutstanding > 0 && minLimit > 0 && minLimit <= maxOutstanding && targetLatencyMS > 0);
+
+		this.maxOutstanding = maxOutstanding;
+		this.maxOutstandingPerCommand = maxOutstandingPerCommand;
+		this.adaptive = adaptive;
+		this.minLimit = minLimit;
+		this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMS);
+		this.limit = maxOutstanding;
+	}
+
+	/*
+	 * Reserva una plaza para el comando. Si no hay plazas lanza
+	 * CommandRejectedException. La plaza debe liberarse con release al resolverse
+	 * la petición.
+	 */
+	public Permit acquire(String commandType) {
+
+		if (!tryIncrement(outstanding, getLimit()))
+			throw reject(commandType, REJECTED_BY_HANDLER);
+
+		AtomicInteger byCommand = null;
+
+		if (maxOutstandingPerCommand > 0) {
+
+			byCommand = outstandingByCommand.computeIfAbsent(String.valueOf(commandType), k -> new AtomicInteger());
+
+			if (!tryIncrement(byCommand, maxOutstandingPerCommand)) {
+				outstanding.decrementAndGet();
+				throw reject(commandType, REJECTED_BY_COMMAND);
+			}
+		}
+		return new Permit(commandType, byCommand);
+	}
+
+	/*
+	 * Libera la plaza y, si el límite es adaptativo, lo ajusta según la latencia
+	 * observada
+	 */
+	public void release(Permit permit, long latencyNanos, boolean timedOut) {
+
+		if (!permit.release())
+			return;
+
+		outstanding.decrementAndGet();
+
+		if (permit.byCommand != null)
+			permit.byCommand.decrementAndGet();
+
+		if (adaptive)
+			adjustLimit(latencyNanos, timedOut);
+	}
+
+	private void adjustLimit(long latencyNanos, boolean timedOut) {
+
+		limitLock.lock();
+		try {
+			if (timedOut || latencyNanos > targetLatencyNanos)
+				limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+			else
+				limit = Math.min(maxOutstanding, limit + 1.0 / limit);
+		} finally {
+			limitLock.unlock();
+		}
+	}
+
+	private CommandRejectedException reject(String commandType, String reason) {
+
+		rejectedCount.incrementAndGet();
+		logger.warn("Comando " + commandType + " rechazado. Límite de peticiones pendientes alcanzado (" + reason
+				+ "). Pendientes: " + outstanding.get() + ", límite: " + getLimit());
+		return new CommandRejectedException();
+	}
+
+	private static boolean tryIncrement(AtomicInteger counter, int max) {
+
+		if (max <= 0) {
+			counter.incrementAndGet();
+			return true;
+		}
+
+		while (true) {
+			int current = counter.get();
+			if (current >= max)
+				return false;
+			if (counter.compareAndSet(current, current + 1))
+				return true;
+		}
+	}
+
+	/*
+	 * Límite total vigente (0 = sin límite)
+	 */
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	public int getOutstanding(String commandType) {
+
+		AtomicInteger byCommand = outstandingByCommand.get(commandType);
+		return byCommand != null ? byCommand.get() : 0;
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/*
+	 * Plaza reservada por una petición. Solo se libera una vez.
+	 */
+	public static class Permit {
+
+		private final String commandType;
+
+		private final AtomicInteger byCommand;
+
+		private final long startNanos = System.nanoTime();
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Permit(String commandType, AtomicInteger byCommand) {
+			this.commandType = commandType;
+			this.byCommand = byCommand;
+		}
+
+		private boolean release() {
+			return released.compareAndSet(false, true);
+		}
+
+		public String getCommandType() {
+			return commandType;
+		}
+
+		public long getStartNanos() {
+			return startNanos;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/*
+ * Ejecutor de comandos bloqueantes (sendEventAndWaitResult). Si se activa y la
+ * JVM lo soporta, cada comando se ejecuta en su propio hilo virtual, de forma
+ * que la espera por la confirmación no ocupa un hilo de plataforma. En otro
+ * caso el comando se ejecuta en el hilo que lo envía.
+ * 
+ * Los hilos virtuales se crean por reflexión para mantener la compatibilidad
+ * con java 8. El contexto de la petición http se propaga al hilo que ejecuta el
+ * comando. Cualquier otro contexto ligado al hilo (p.ej. el de seguridad) se
+ * propaga mediante el TaskDecorator indicado, que se aplica en el hilo que envía
+ * el comando.
+ */
+public class CommandExecutor {
+
+	protected static Logger logger = LogManager.getLogger();
+
+	private static final String THREAD_PREFIX = "command-";
+
+	// Null si los comandos se ejecutan en el hilo que los envía
+	private final ExecutorService executor;
+
+	// Null si no hay contexto adicional que propagar
+	private final TaskDecorator taskDecorator;
+
+	public CommandExecutor(boolean virtualThreads) {
+		this(virtualThreads, null);
+	}
+
+	public CommandExecutor(boolean virtualThreads, TaskDecorator taskDecorator) {
+
+		this.taskDecorator = taskDecorator;
+
+		ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+
+		if (virtualThreads && virtualExecutor == null)
+			logger.warn("Hilos virtuales no soportados por la JVM (" + System.getProperty("java.version")
+					+ "). Los comandos se ejecutarán en el hilo de la petición");
+
+		executor = virtualExecutor;
+	}
+
+	/*
+	 * Ejecuta el comando bloqueante y devuelve un CompletableFuture que se resuelve
+	 * con su resultado o con la excepción lanzada
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> command) {
+
+		if (executor == null)
+			return run(command);
+
+		RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+
+		CompletableFuture<T> future = new CompletableFuture<>();
+
+		Runnable task = () -> {
+
+			RequestContextHolder.setRequestAttributes(requestAttributes);
+			try {
+				future.complete(command.get());
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			} finally {
+				RequestContextHolder.resetRequestAttributes();
+			}
+		};
+
+		executor.execute(taskDecorator != null ? taskDecorator.decorate(task) : task);
+		return future;
+	}
+
+	private static <T> CompletableFuture<T> run(Supplier<T> command) {
+
+		CompletableFuture<T> future = new CompletableFuture<>();
+
+		try {
+			future.complete(command.get());
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	public boolean isVirtual() {
+		return executor != null;
+	}
+
+	public void shutdown() {
+
+		if (executor != null)
+			executor.shutdown();
+	}
+
+	/*
+	 * Equivale a Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix,
+	 * 0).factory()) en java 21+. Devuelve null si la JVM no soporta hilos
+	 * virtuales
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_PREFIX, 0L);
+
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+			Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
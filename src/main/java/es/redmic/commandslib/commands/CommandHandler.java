@@ -20,13 +20,19 @@ package es.redmic.commandslib.commands;
  * #L%
  */
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -34,30 +40,122 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.core.task.TaskDecorator;
 import org.springframework.kafka.annotation.KafkaHandler;
 
 import es.redmic.brokerlib.alert.AlertService;
 import es.redmic.brokerlib.avro.common.Event;
+import es.redmic.brokerlib.avro.fail.PrepareRollbackEvent;
 import es.redmic.brokerlib.avro.fail.RollbackFailedEvent;
 import es.redmic.commandslib.aggregate.Aggregate;
+import es.redmic.commandslib.commands.CommandAdmissionController.Permit;
+import es.redmic.commandslib.exceptions.CommandRejectedException;
 import es.redmic.commandslib.exceptions.ConfirmationTimeoutException;
 import es.redmic.commandslib.gateway.BrokerEvent;
+import es.redmic.commandslib.gateway.EventHeaders;
 import es.redmic.exception.common.BaseException;
+import io.micrometer.core.instrument.MeterRegistry;
 
 public abstract class CommandHandler implements ApplicationEventPublisherAware {
 
 	@Value("${rest.eventsource.timeout.ms}")
 	protected long timeoutMS;
 
+	// Timeout adaptativo a partir del p99 de la latencia observada por tipo de
+	// comando (min-ms y max-ms por defecto: timeoutMS / 10 y timeoutMS)
+	@Value("${rest.eventsource.timeout.adaptive.enabled:false}")
+	private boolean adaptiveTimeoutEnabled;
+
+	@Value("${rest.eventsource.timeout.adaptive.multiplier:3}")
+	private double adaptiveTimeoutMultiplier;
+
+	@Value("${rest.eventsource.timeout.adaptive.min-ms:0}")
+	private long adaptiveTimeoutMinMS;
+
+	@Value("${rest.eventsource.timeout.adaptive.max-ms:0}")
+	private long adaptiveTimeoutMaxMS;
+
+	@Value("${rest.eventsource.timeout.adaptive.min-samples:100}")
+	private long adaptiveTimeoutMinSamples;
+
+	// Caché de resultados por clave de idempotencia
+	@Value("${rest.eventsource.replay-cache.enabled:false}")
+	private boolean replayCacheEnabled;
+
+	@Value("${rest.eventsource.replay-cache.max-entries:10000}")
+	private int replayCacheMaxEntries;
+
+	@Value("${rest.eventsource.replay-cache.ttl-ms:300000}")
+	private long replayCacheTtlMS;
+
+	@Value("${rest.eventsource.confirmation.inline:false}")
+	private boolean confirmationInline;
+
+	@Value("${rest.eventsource.confirmation.threads:4}")
+	private int confirmationThreads;
+
+	@Value("${rest.eventsource.confirmation.queue-capacity:1000}")
+	private int confirmationQueueCapacity;
+
+	// Control de admisión (0 = sin límite)
+	@Value("${rest.eventsource.admission.max-outstanding:0}")
+	private int admissionMaxOutstanding;
+
+	@Value("${rest.eventsource.admission.max-outstanding-per-command:0}")
+	private int admissionMaxOutstandingPerCommand;
+
+	@Value("${rest.eventsource.admission.adaptive:false}")
+	private boolean admissionAdaptive;
+
+	@Value("${rest.eventsource.admission.adaptive.min-limit:10}")
+	private int admissionMinLimit;
+
+	// Si no se indica, la mitad del timeout
+	@Value("${rest.eventsource.admission.adaptive.target-latency-ms:0}")
+	private long admissionTargetLatencyMS;
+
+	// Ejecuta los comandos bloqueantes en hilos virtuales (java 21+)
+	@Value("${rest.eventsource.virtual-threads.enabled:false}")
+	private boolean virtualThreadsEnabled;
+
 	protected static Logger logger = LogManager.getLogger();
 
 	protected ApplicationEventPublisher eventPublisher;
 
-	protected Map<String, CompletableFuture<Object>> completableFeatures = new HashMap<>();
+	// Peticiones pendientes de confirmación
+	protected PendingConfirmationRegistry pendingConfirmations = new PendingConfirmationRegistry();
+
+	// Ejecutor compartido para resolver las confirmaciones
+	protected ConfirmationDispatcher confirmationDispatcher;
+
+	// Política de timeout de las confirmaciones
+	protected AdaptiveTimeoutPolicy timeoutPolicy;
+
+	// Resultados de comandos por clave de idempotencia. Null si está desactivada
+	protected CommandReplayCache replayCache;
+
+	// Ejecutor de comandos bloqueantes. En el hilo de la petición hasta que se
+	// inicializa el handler
+	protected CommandExecutor commandExecutor = new CommandExecutor(false);
+
+	// Control de admisión de peticiones. Sin límites hasta que se inicializa el
+	// handler
+	protected CommandAdmissionController admissionController = new CommandAdmissionController(0, 0);
+
+	// Métricas de los comandos. Sin registro hasta que se inicializa el handler
+	protected CommandMetrics metrics = new CommandMetrics(null, getClass().getSimpleName());
 
 	@Autowired
 	AlertService alertService;
 
+	@Autowired(required = false)
+	MeterRegistry meterRegistry;
+
+	// Propaga al hilo virtual el contexto ligado al hilo de la petición (p.ej. el
+	// de seguridad)
+	@Autowired(required = false)
+	TaskDecorator taskDecorator;
+
 	@KafkaHandler
 	private void listen(RollbackFailedEvent event) {
 
@@ -65,6 +163,98 @@ public abstract class CommandHandler implements ApplicationEventPublisherAware {
 				+ event.getFailEventType() + " con id " + event.getAggregateId() + " ha fallado.");
 	}
 
+	@PostConstruct
+	private void setUpConfirmations() {
+
+		confirmationDispatcher = new ConfirmationDispatcher(confirmationInline, confirmationThreads,
+				confirmationQueueCapacity);
+
+		admissionController = createAdmissionController();
+
+		timeoutPolicy = createTimeoutPolicy();
+
+		commandExecutor = new CommandExecutor(virtualThreadsEnabled, taskDecorator);
+
+		if (replayCacheEnabled)
+			replayCache = new CommandReplayCache(replayCacheMaxEntries, replayCacheTtlMS);
+
+		metrics = new CommandMetrics(meterRegistry, getClass().getSimpleName());
+		metrics.bindGauges(pendingConfirmations, confirmationDispatcher);
+		metrics.bindAdmissionGauges(admissionController);
+	}
+
+	private AdaptiveTimeoutPolicy createTimeoutPolicy() {
+
+		if (!adaptiveTimeoutEnabled)
+			return new AdaptiveTimeoutPolicy(timeoutMS);
+
+		long maxMS = adaptiveTimeoutMaxMS > 0 ? adaptiveTimeoutMaxMS : timeoutMS,
+				minMS = Math.min(maxMS, adaptiveTimeoutMinMS > 0 ? adaptiveTimeoutMinMS : Math.max(1, timeoutMS / 10));
+
+		return new AdaptiveTimeoutPolicy(true, timeoutMS, adaptiveTimeoutMultiplier, minMS, maxMS,
+				adaptiveTimeoutMinSamples);
+	}
+
+	private CommandAdmissionController createAdmissionController() {
+
+		boolean adaptive = admissionAdaptive;
+
+		if (adaptive && admissionMaxOutstanding <= 0) {
+			logger.warn("Límite adaptativo ignorado. Es necesario indicar rest.eventsource.admission.max-outstanding");
+			adaptive = false;
+		}
+
+		if (!adaptive)
+			return new CommandAdmissionController(admissionMaxOutstanding, admissionMaxOutstandingPerCommand);
+
+		return new CommandAdmissionController(admissionMaxOutstanding, admissionMaxOutstandingPerCommand, true,
+				Math.min(Math.max(1, admissionMinLimit), admissionMaxOutstanding),
+				admissionTargetLatencyMS > 0 ? admissionTargetLatencyMS : Math.max(1, timeoutMS / 2));
+	}
+
+	@PreDestroy
+	private void shutdownExecutors() {
+		pendingConfirmations.shutdown();
+		confirmationDispatcher.shutdown();
+		commandExecutor.shutdown();
+	}
+
+	public ConfirmationDispatcher getConfirmationDispatcher() {
+		return confirmationDispatcher;
+	}
+
+	public PendingConfirmationRegistry getPendingConfirmations() {
+		return pendingConfirmations;
+	}
+
+	public AdaptiveTimeoutPolicy getTimeoutPolicy() {
+		return timeoutPolicy;
+	}
+
+	/*
+	 * Timeout de confirmación para el tipo de comando dado
+	 */
+	protected long getTimeoutMS(String commandType) {
+
+		return timeoutPolicy != null ? timeoutPolicy.getTimeoutMS(commandType) : timeoutMS;
+	}
+
+	public CommandExecutor getCommandExecutor() {
+		return commandExecutor;
+	}
+
+	public CommandReplayCache getReplayCache() {
+		return replayCache;
+	}
+
+	public CommandAdmissionController getAdmissionController() {
+		return admissionController;
+	}
+
+	public CommandMetrics getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
 		this.eventPublisher = eventPublisher;
@@ -72,7 +262,48 @@ public abstract class CommandHandler implements ApplicationEventPublisherAware {
 
 	protected void publishToKafka(Event evt, String topic) {
 
-		this.eventPublisher.publishEvent(new BrokerEvent(this, evt, topic));
+		BrokerEvent brokerEvent = new BrokerEvent(this, evt, topic);
+		this.eventPublisher.publishEvent(brokerEvent);
+	}
+
+	/*
+	 * Ejecuta un lote de comandos no bloqueantes (que devuelven el future de
+	 * sendEventAndGetFuture). Cada comando envía su evento como cualquier otro
+	 * (el agrupamiento en kafka depende de linger.ms y batch.size del productor) y
+	 * se espera por todas las confirmaciones a la vez. El future devuelto se
+	 * resuelve con el resultado de cada comando, en el mismo orden.
+	 */
+	protected <T> CompletableFuture<List<CommandResult<T>>> executeBatchAsync(
+			List<Supplier<CompletableFuture<T>>> commands) {
+
+		List<CompletableFuture<T>> futures = new ArrayList<>(commands.size());
+
+		for (Supplier<CompletableFuture<T>> command : commands) {
+			try {
+				futures.add(command.get());
+			} catch (RuntimeException e) {
+				CompletableFuture<T> failed = new CompletableFuture<>();
+				failed.completeExceptionally(e);
+				futures.add(failed);
+			}
+		}
+
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+				.handle((value, ex) -> {
+					List<CommandResult<T>> results = new ArrayList<>(futures.size());
+					for (CompletableFuture<T> future : futures)
+						results.add(getCommandResult(future));
+					return results;
+				});
+	}
+
+	private <T> CommandResult<T> getCommandResult(CompletableFuture<T> future) {
+
+		try {
+			return CommandResult.success(future.join());
+		} catch (CompletionException e) {
+			return CommandResult.error((BaseException) getCause(e));
+		}
 	}
 
 	/* Handler por defecto para descartar los mensajes que no queremos */
@@ -86,26 +317,51 @@ public abstract class CommandHandler implements ApplicationEventPublisherAware {
 	}
 
 	protected void resolveCommand(String sessionId, Object result) {
+		resolveCommand(sessionId, result, null);
+	}
+
+	/*
+	 * Resuelve la petición y, a partir de las marcas de tiempo de las cabeceras
+	 * del evento recibido, registra el desglose de la latencia por etapas
+	 */
+	protected void resolveCommand(String sessionId, Object result, Map<String, Object> headers) {
+
+		long receivedAt = System.currentTimeMillis();
 
 		// Si el evento es una excepción se resuelve con ella, si no, con null que
 		// significa que todo fue bien
-		Executors.newCachedThreadPool().submit(() -> {
-			CompletableFuture<Object> future = completableFeatures.get(sessionId);
+		confirmationDispatcher.dispatch(() -> {
 
-			if (future != null) {
-				future.complete(result);
-			} else {
+			long registeredAt = pendingConfirmations.getRegisteredAt(sessionId);
+
+			if (!pendingConfirmations.complete(sessionId, result)) {
 				logger.warn("Petición asíncrona no resgistrada para sessionId: " + sessionId);
+				return;
 			}
-			return;
+
+			if (registeredAt > 0)
+				recordStages(sessionId, registeredAt, headers, receivedAt);
 		});
 	}
 
+	private void recordStages(String sessionId, long registeredAt, Map<String, Object> headers, long receivedAt) {
+
+		Map<String, Long> breakdown = LatencyBreakdown.compute(registeredAt, EventHeaders.getStages(headers),
+				receivedAt, System.currentTimeMillis());
+
+		logger.debug("Latencia por etapas para sessionId " + sessionId + ": " + breakdown);
+
+		metrics.recordStages(breakdown);
+	}
+
 	protected void unlockStatus(Aggregate agg, String id, String topic) {
 
 		Event rollbackEvent = agg.getRollbackEventFromBlockedEvent(id, timeoutMS);
 
 		if (rollbackEvent != null) {
+			metrics.incrementRollback(rollbackEvent instanceof PrepareRollbackEvent
+					? ((PrepareRollbackEvent) rollbackEvent).getFailEventType()
+					: rollbackEvent.getType(), CommandMetrics.ROLLBACK_REASON_UNLOCK);
 			alertService.errorAlert(rollbackEvent.getType() + " rollback", "Enviando rollback de evento "
 					+ rollbackEvent.getType() + " con id " + rollbackEvent.getAggregateId());
 			publishToKafka(rollbackEvent, topic);
@@ -114,33 +370,210 @@ public abstract class CommandHandler implements ApplicationEventPublisherAware {
 
 	protected <T> T sendEventAndWaitResult(Aggregate agg, Event event, String topic) {
 
-		// Crea la espera hasta que se responda con evento completado
-		CompletableFuture<T> completableFuture = getCompletableFeature(event.getSessionId());
+		// Reserva plaza o rechaza la petición si se ha alcanzado el límite
+		Permit permit = admit(event);
 
-		// Emite evento para enviar a kafka
-		publishToKafka(event, topic);
+		long commandTimeoutMS = getTimeoutMS(event.getType());
+
+		// Crea la espera hasta que se responda con evento completado
+		CompletableFuture<T> completableFuture = getCompletableFeature(event.getSessionId(), commandTimeoutMS,
+				null);
 
-		// Obtiene el resultado cuando se resuelva la espera
 		try {
-			return getResult(event.getSessionId(), completableFuture);
+			// Emite evento para enviar a kafka
+			publishToKafka(event, topic);
+
+			// Obtiene el resultado cuando se resuelva la espera
+			T result = getResult(commandTimeoutMS, event.getSessionId(), completableFuture);
+			onConfirmation(event, permit, commandTimeoutMS, null);
+			return result;
 		} catch (ConfirmationTimeoutException e) {
+			onConfirmation(event, permit, commandTimeoutMS, e);
 			e.printStackTrace();
 			alertService.errorAlert(event.getType() + " rollback", "Enviando rollback de evento " + event.getType()
 					+ " con id " + event.getAggregateId() + " " + e.getLocalizedMessage());
+			metrics.incrementRollback(event.getType(), CommandMetrics.ROLLBACK_REASON_TIMEOUT);
 			publishToKafka(agg.getRollbackEvent(event), topic);
 			throw e;
+		} catch (RuntimeException e) {
+			onConfirmation(event, permit, commandTimeoutMS, e);
+			throw e;
+		} finally {
+			pendingConfirmations.remove(event.getSessionId());
+		}
+	}
+
+	/*
+	 * Versión no bloqueante de sendEventAndWaitResult. Devuelve un
+	 * CompletableFuture que se resuelve con el resultado de la confirmación, con
+	 * la excepción enviada desde la vista o con ConfirmationTimeoutException si no
+	 * se recibe confirmación en el tiempo establecido (en cuyo caso se envía el
+	 * rollback del evento).
+	 */
+	protected <T> CompletableFuture<T> sendEventAndGetFuture(Aggregate agg, Event event, String topic) {
+		return sendEventAndGetFuture(getTimeoutMS(event.getType()), agg, event, topic);
+	}
+
+	protected <T> CompletableFuture<T> sendEventAndGetFuture(long timeoutMS, Aggregate agg, Event event,
+			String topic) {
+
+		// Reserva plaza o rechaza la petición si se ha alcanzado el límite
+		Permit permit = admit(event);
+
+		// Crea la espera hasta que se responda con evento completado. Si expira, se
+		// envía el rollback del evento
+		CompletableFuture<T> completableFuture = getCompletableFeature(event.getSessionId(), timeoutMS, () -> {
+			alertService.errorAlert(event.getType() + " rollback", "Enviando rollback de evento " + event.getType()
+					+ " con id " + event.getAggregateId() + " por timeout");
+			metrics.incrementRollback(event.getType(), CommandMetrics.ROLLBACK_REASON_TIMEOUT);
+			publishToKafka(agg.getRollbackEvent(event), topic);
+		});
+
+		CompletableFuture<T> result = new CompletableFuture<>();
+
+		completableFuture.whenComplete((value, ex) -> {
+
+			if (ex == null) {
+				onConfirmation(event, permit, timeoutMS, null);
+				result.complete(value);
+			} else {
+				Throwable cause = getCause(ex);
+				onConfirmation(event, permit, timeoutMS, cause);
+				result.completeExceptionally(cause);
+			}
+		});
+
+		// Si el evento no llega a enviarse no habrá confirmación ni rollback, por
+		// lo que se libera la petición y se resuelve con el error del envío
+		Consumer<RuntimeException> onPublishError = e -> {
+			pendingConfirmations.remove(event.getSessionId());
+			onConfirmation(event, permit, timeoutMS, e);
+			result.completeExceptionally(e);
+		};
+
+		// Emite evento para enviar a kafka
+		try {
+			publishToKafka(event, topic);
+		} catch (RuntimeException e) {
+			logger.error("Error enviando evento " + event.getType() + " con sessionId " + event.getSessionId() + ": "
+					+ e.getLocalizedMessage());
+			onPublishError.accept(e);
+		}
+
+		return result;
+	}
+
+	/*
+	 * Ejecuta un comando bloqueante (que espera su confirmación con
+	 * sendEventAndWaitResult o waitResult) con el ejecutor de comandos. En modo
+	 * hilos virtuales la espera no ocupa un hilo de plataforma, por lo que permite
+	 * ofrecer una interfaz asíncrona a handlers que sólo disponen de la versión
+	 * bloqueante. Si el handler ya ofrece la versión asíncrona (xxxAsync) debe
+	 * usarse ésta directamente.
+	 */
+	public <T> CompletableFuture<T> executeBlocking(Supplier<T> command) {
+
+		return commandExecutor.submit(command);
+	}
+
+	/*
+	 * Ejecuta el comando o, si el mismo usuario ya ejecutó sobre el mismo
+	 * elemento otro con la misma clave de idempotencia y el mismo contenido,
+	 * devuelve su resultado sin volver a procesarlo. Si el contenido es distinto
+	 * se rechaza con IdempotencyKeyConflictException
+	 */
+	protected <T> CompletableFuture<T> executeIdempotent(Command cmd, Supplier<CompletableFuture<T>> command) {
+
+		if (replayCache == null || cmd.getIdempotencyKey() == null)
+			return command.get();
+
+		String key = cmd.getClass().getSimpleName() + ":" + getIdempotencyUserId() + ":"
+				+ cmd.getIdempotencyTarget() + ":" + cmd.getIdempotencyKey();
+
+		return replayCache.execute(key, cmd.getIdempotencyFingerprint(), command);
+	}
+
+	/*
+	 * Usuario autenticado con el que se acotan las claves de idempotencia. Los
+	 * handlers que usan executeIdempotent deben sobrescribirlo
+	 */
+	protected String getIdempotencyUserId() {
+		return null;
+	}
+
+	private Permit admit(Event event) {
+
+		try {
+			return admissionController.acquire(event.getType());
+		} catch (CommandRejectedException e) {
+			metrics.incrementRejected(event.getType());
+			throw e;
 		}
 	}
 
+	/*
+	 * Libera la plaza de la petición y registra su resultado
+	 */
+	private void onConfirmation(Event event, Permit permit, long timeoutMS, Throwable error) {
+
+		long latencyNanos = System.nanoTime() - permit.getStartNanos();
+
+		admissionController.release(permit, latencyNanos, error instanceof ConfirmationTimeoutException);
+		metrics.recordConfirmation(event.getType(), permit.getStartNanos(), error);
+
+		if (timeoutPolicy == null)
+			return;
+
+		// Los timeouts se registran con el plazo que tenían, ya que su latencia real
+		// es al menos ésa. Los errores en el envío no tienen latencia de
+		// confirmación
+		if (error instanceof ConfirmationTimeoutException)
+			timeoutPolicy.recordTimeout(event.getType(), timeoutMS);
+		else if (error == null || error instanceof BaseException)
+			timeoutPolicy.record(event.getType(), TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+	}
+
+	/*
+	 * Espera por el resultado de un CompletableFuture obtenido con
+	 * sendEventAndGetFuture. El timeout ya está controlado por el propio future.
+	 */
+	protected <T> T waitResult(CompletableFuture<T> completableFuture) {
+
+		try {
+			return completableFuture.join();
+		} catch (CompletionException e) {
+			// Error en el envío del evento
+			if (e.getCause() instanceof RuntimeException && !(e.getCause() instanceof BaseException))
+				throw (RuntimeException) e.getCause();
+			throw (BaseException) getCause(e);
+		}
+	}
+
+	private Throwable getCause(Throwable ex) {
+
+		Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+
+		if (cause instanceof BaseException)
+			return cause; // Error enviado desde la vista o timeout
+
+		logger.error("Error. Excepción no controlada en la ejecución.");
+		return new ConfirmationTimeoutException();
+	}
+
 	// Crea un completableFuture para esperar por el evento de confirmación o error.
 	protected <T> CompletableFuture<T> getCompletableFeature(String sessionId) {
+		return getCompletableFeature(sessionId, timeoutMS, null);
+	}
+
+	protected <T> CompletableFuture<T> getCompletableFeature(String sessionId, long timeoutMS, Runnable onExpire) {
 
-		// Añade espera para resolver la petición
-		CompletableFuture<Object> future = new CompletableFuture<Object>();
-		completableFeatures.put(sessionId, future);
+		// Añade espera para resolver la petición. Si no se resuelve a tiempo, el
+		// registro la completa con ConfirmationTimeoutException
+		CompletableFuture<Object> future = pendingConfirmations.register(sessionId, timeoutMS, onExpire);
 
-		// Cuando se resuelve la espera, se resuelve con el dto
-		return future.thenApplyAsync(obj -> apply(obj));
+		// Cuando se resuelve la espera, se resuelve con el dto (en el mismo hilo que
+		// la resuelve, sin saltar a otro ejecutor)
+		return future.thenApply(obj -> apply(obj));
 	}
 
 	@SuppressWarnings("unchecked")
@@ -180,7 +613,7 @@ public abstract class CommandHandler implements ApplicationEventPublisherAware {
 
 			throw new ConfirmationTimeoutException();
 		} finally {
-			completableFeatures.remove(sessionId);
+			pendingConfirmations.remove(sessionId);
 		}
 	}
 }
@@ -0,0 +1,223 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import es.redmic.commandslib.exceptions.ConfirmationTimeoutException;
+import es.redmic.commandslib.streaming.common.RestoreProgressListener;
+import es.redmic.commandslib.streaming.statestore.NearCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Métricas del ciclo completo de los comandos (envío del evento hasta su
+ * confirmación). Si no hay MeterRegistry disponible no se registra nada.
+ */
+public class CommandMetrics {
+
+	// @formatter:off
+
+	public static final String CONFIRMATION_TIMER = "redmic.commands.confirmation",
+			PENDING_GAUGE = "redmic.commands.pending",
+			TIMEOUT_COUNTER = "redmic.commands.timeout",
+			ROLLBACK_COUNTER = "redmic.commands.rollback",
+			DISPATCHER_QUEUE_GAUGE = "redmic.commands.dispatcher.queue",
+			DISPATCHER_CALLER_RUNS_COUNTER = "redmic.commands.dispatcher.caller-runs",
+			GATEWAY_SEND_TIMER = "redmic.commands.gateway.send",
+			STAGE_TIMER = "redmic.commands.stage",
+			REJECTED_COUNTER = "redmic.commands.rejected",
+			ADMISSION_LIMIT_GAUGE = "redmic.commands.admission.limit",
+			NEAR_CACHE_SIZE_GAUGE = "redmic.commands.statestore.cache.size",
+			NEAR_CACHE_REQUESTS_COUNTER = "redmic.commands.statestore.cache.requests",
+			NEAR_CACHE_EVICTIONS_COUNTER = "redmic.commands.statestore.cache.evictions",
+			RESTORE_REMAINING_GAUGE = "redmic.commands.streams.restore.remaining",
+			RESTORE_RATE_GAUGE = "redmic.commands.streams.restore.rate",
+			RESTORE_ETA_GAUGE = "redmic.commands.streams.restore.eta",
+			RESTORE_ACTIVE_GAUGE = "redmic.commands.streams.restore.active";
+
+	public static final String HANDLER_TAG = "handler",
+			COMMAND_TAG = "command",
+			OUTCOME_TAG = "outcome",
+			REASON_TAG = "reason",
+			TOPIC_TAG = "topic",
+			STAGE_TAG = "stage",
+			STORE_TAG = "store",
+			RESULT_TAG = "result";
+
+	public static final String OUTCOME_SUCCESS = "success",
+			OUTCOME_ERROR = "error",
+			OUTCOME_TIMEOUT = "timeout";
+
+	public static final String ROLLBACK_REASON_TIMEOUT = "timeout",
+			ROLLBACK_REASON_UNLOCK = "unlock";
+
+	public static final String RESULT_HIT = "hit",
+			RESULT_MISS = "miss";
+
+	// @formatter:on
+
+	private final MeterRegistry registry;
+
+	private final String handler;
+
+	public CommandMetrics(MeterRegistry registry, String handler) {
+		this.registry = registry;
+		this.handler = handler;
+	}
+
+	public boolean isEnabled() {
+		return registry != null;
+	}
+
+	public void bindGauges(PendingConfirmationRegistry pendingConfirmations,
+			ConfirmationDispatcher confirmationDispatcher) {
+
+		if (!isEnabled())
+			return;
+
+		Gauge.builder(PENDING_GAUGE, pendingConfirmations, PendingConfirmationRegistry::size)
+				.tag(HANDLER_TAG, handler).register(registry);
+
+		Gauge.builder(DISPATCHER_QUEUE_GAUGE, confirmationDispatcher, ConfirmationDispatcher::getQueueSize)
+				.tag(HANDLER_TAG, handler).register(registry);
+
+		FunctionCounter.builder(DISPATCHER_CALLER_RUNS_COUNTER, confirmationDispatcher,
+				ConfirmationDispatcher::getCallerRunsCount).tag(HANDLER_TAG, handler).register(registry);
+	}
+
+	public void bindAdmissionGauges(CommandAdmissionController admissionController) {
+
+		if (!isEnabled())
+			return;
+
+		Gauge.builder(ADMISSION_LIMIT_GAUGE, admissionController, CommandAdmissionController::getLimit)
+				.tag(HANDLER_TAG, handler).register(registry);
+	}
+
+	public void bindNearCacheGauges(String store, NearCache<?, ?> nearCache) {
+
+		if (!isEnabled() || nearCache == null)
+			return;
+
+		Gauge.builder(NEAR_CACHE_SIZE_GAUGE, nearCache, NearCache::size).tag(HANDLER_TAG, handler)
+				.tag(STORE_TAG, store).register(registry);
+
+		FunctionCounter.builder(NEAR_CACHE_REQUESTS_COUNTER, nearCache, NearCache::getHitCount)
+				.tag(HANDLER_TAG, handler).tag(STORE_TAG, store).tag(RESULT_TAG, RESULT_HIT).register(registry);
+
+		FunctionCounter.builder(NEAR_CACHE_REQUESTS_COUNTER, nearCache, NearCache::getMissCount)
+				.tag(HANDLER_TAG, handler).tag(STORE_TAG, store).tag(RESULT_TAG, RESULT_MISS).register(registry);
+
+		FunctionCounter.builder(NEAR_CACHE_EVICTIONS_COUNTER, nearCache, NearCache::getEvictionCount)
+				.tag(HANDLER_TAG, handler).tag(STORE_TAG, store).register(registry);
+	}
+
+	/*
+	 * Progreso de la restauración de los stores: registros pendientes, registros
+	 * por segundo, tiempo estimado restante (s) y stores restaurándose
+	 */
+	public void bindRestoreGauges(RestoreProgressListener restoreListener) {
+
+		if (!isEnabled() || restoreListener == null)
+			return;
+
+		Gauge.builder(RESTORE_REMAINING_GAUGE, restoreListener, RestoreProgressListener::getRemainingRecords)
+				.tag(HANDLER_TAG, handler).register(registry);
+
+		Gauge.builder(RESTORE_RATE_GAUGE, restoreListener, RestoreProgressListener::getRecordsPerSecond)
+				.tag(HANDLER_TAG, handler).register(registry);
+
+		Gauge.builder(RESTORE_ETA_GAUGE, restoreListener, RestoreProgressListener::getEtaSeconds)
+				.tag(HANDLER_TAG, handler).register(registry);
+
+		Gauge.builder(RESTORE_ACTIVE_GAUGE, restoreListener, RestoreProgressListener::getActiveRestores)
+				.tag(HANDLER_TAG, handler).register(registry);
+	}
+
+	/*
+	 * Registra el tiempo transcurrido desde startNanos hasta la resolución de la
+	 * petición, clasificado por tipo de comando y resultado
+	 */
+	public void recordConfirmation(String commandType, long startNanos, Throwable error) {
+
+		if (!isEnabled())
+			return;
+
+		String outcome = getOutcome(error);
+
+		Timer.builder(CONFIRMATION_TIMER).tag(HANDLER_TAG, handler).tag(COMMAND_TAG, String.valueOf(commandType))
+				.tag(OUTCOME_TAG, outcome).publishPercentileHistogram().register(registry)
+				.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+		if (OUTCOME_TIMEOUT.equals(outcome))
+			Counter.builder(TIMEOUT_COUNTER).tag(HANDLER_TAG, handler).tag(COMMAND_TAG, String.valueOf(commandType))
+					.register(registry).increment();
+	}
+
+	/*
+	 * Registra el desglose por etapas (en ms) de una petición resuelta
+	 */
+	public void recordStages(Map<String, Long> breakdown) {
+
+		if (!isEnabled())
+			return;
+
+		for (Map.Entry<String, Long> stage : breakdown.entrySet()) {
+			Timer.builder(STAGE_TIMER).tag(HANDLER_TAG, handler).tag(STAGE_TAG, stage.getKey())
+					.publishPercentileHistogram().register(registry).record(stage.getValue(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void incrementRejected(String commandType) {
+
+		if (!isEnabled())
+			return;
+
+		Counter.builder(REJECTED_COUNTER).tag(HANDLER_TAG, handler).tag(COMMAND_TAG, String.valueOf(commandType))
+				.register(registry).increment();
+	}
+
+	public void incrementRollback(String eventType, String reason) {
+
+		if (!isEnabled())
+			return;
+
+		Counter.builder(ROLLBACK_COUNTER).tag(HANDLER_TAG, handler).tag(COMMAND_TAG, String.valueOf(eventType))
+				.tag(REASON_TAG, reason).register(registry).increment();
+	}
+
+	public static String getOutcome(Throwable error) {
+
+		if (error == null)
+			return OUTCOME_SUCCESS;
+
+		if (error instanceof ConfirmationTimeoutException)
+			return OUTCOME_TIMEOUT;
+
+		return OUTCOME_ERROR;
+	}
+}
@@ -0,0 +1,231 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import es.redmic.commandslib.exceptions.CommandRejectedException;
+import es.redmic.commandslib.exceptions.ConfirmationTimeoutException;
+import es.redmic.commandslib.exceptions.IdempotencyKeyConflictException;
+import es.redmic.commandslib.exceptions.ItemLockedException;
+import es.redmic.commandslib.exceptions.StoreNotReadyException;
+import es.redmic.exception.common.BaseException;
+
+/*
+ * Caché de resultados de comandos por clave de idempotencia. Los reintentos de
+ * un comando con la misma clave reciben el resultado (o error) del comando
+ * original, incluso si éste todavía no se ha resuelto, en lugar de lanzar una
+ * nueva saga. Está acotada en número de entradas y las entradas caducan tras
+ * ttlMS. Los errores transitorios (timeout, rechazo por sobrecarga, elemento
+ * bloqueado, store no disponible) no se conservan para que el reintento pueda
+ * ejecutarse. Si una clave se reutiliza con una huella de contenido distinta
+ * se rechaza en lugar de devolver el resultado anterior.
+ */
+public class CommandReplayCache {
+
+	private final int maxEntries;
+
+	private final long ttlMS;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	// Orden de inserción (y por tanto de caducidad) de las entradas
+	private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+
+	// @formatter:off
+
+	private final AtomicLong hitCount = new AtomicLong(),
+			missCount = new AtomicLong();
+
+	// @formatter:on
+
+	public CommandReplayCache(int maxEntries, long ttlMS) {
+
+		assert maxEntries > 0;
+		assert ttlMS > 0;
+
+		this.maxEntries = maxEntries;
+		this.ttlMS = ttlMS;
+	}
+
+	/*
+	 * Ejecuta el comando salvo que ya exista un resultado válido para la clave.
+	 * Si la clave es null se ejecuta siempre.
+	 */
+	public <T> CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> command) {
+
+		return execute(key, null, command);
+	}
+
+	/*
+	 * Igual que la anterior, pero si existe un resultado válido para la clave
+	 * obtenido con una huella de contenido distinta devuelve un future fallido con
+	 * IdempotencyKeyConflictException
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> execute(String key, String fingerprint, Supplier<CompletableFuture<T>> command) {
+
+		if (key == null)
+			return command.get();
+
+		Entry entry = new Entry(key, fingerprint, System.currentTimeMillis());
+
+		while (true) {
+			Entry existing = entries.putIfAbsent(key, entry);
+
+			if (existing == null)
+				break;
+
+			if (existing.isValid(System.currentTimeMillis())) {
+				if (!Objects.equals(existing.fingerprint, fingerprint)) {
+					CompletableFuture<T> conflict = new CompletableFuture<>();
+					conflict.completeExceptionally(new IdempotencyKeyConflictException(key));
+					return conflict;
+				}
+				hitCount.incrementAndGet();
+				return (CompletableFuture<T>) copy(existing.future);
+			}
+			entries.remove(key, existing);
+		}
+
+		missCount.incrementAndGet();
+		insertionOrder.add(entry);
+		evict();
+
+		CompletableFuture<T> result;
+
+		try {
+			result = command.get();
+		} catch (RuntimeException e) {
+			entry.future.completeExceptionally(e);
+			throw e;
+		}
+
+		result.whenComplete((value, ex) -> {
+			if (ex == null)
+				entry.future.complete(value);
+			else
+				entry.future.completeExceptionally(unwrap(ex));
+		});
+
+		return (CompletableFuture<T>) copy(entry.future);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/*
+	 * Elimina las entradas caducadas y las más antiguas si se supera el máximo
+	 */
+	private void evict() {
+
+		long now = System.currentTimeMillis();
+
+		Entry oldest;
+
+		while ((oldest = insertionOrder.peek()) != null
+				&& (entries.size() > maxEntries || oldest.isExpired(now) || entries.get(oldest.key) != oldest)) {
+
+			if (insertionOrder.remove(oldest))
+				entries.remove(oldest.key, oldest);
+		}
+	}
+
+	/*
+	 * Devuelve un future independiente para que un consumidor no pueda alterar el
+	 * resultado compartido
+	 */
+	private static CompletableFuture<Object> copy(CompletableFuture<Object> source) {
+
+		CompletableFuture<Object> copy = new CompletableFuture<>();
+
+		source.whenComplete((value, ex) -> {
+			if (ex == null)
+				copy.complete(value);
+			else
+				copy.completeExceptionally(unwrap(ex));
+		});
+		return copy;
+	}
+
+	private static Throwable unwrap(Throwable ex) {
+
+		return (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+	}
+
+	private class Entry {
+
+		private final String key;
+
+		private final String fingerprint;
+
+		private final long createdAt;
+
+		private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+		Entry(String key, String fingerprint, long createdAt) {
+			this.key = key;
+			this.fingerprint = fingerprint;
+			this.createdAt = createdAt;
+		}
+
+		boolean isExpired(long now) {
+			return now - createdAt > ttlMS;
+		}
+
+		/*
+		 * Una entrada es reutilizable si no ha caducado y está pendiente, resuelta
+		 * con éxito o con un error definitivo
+		 */
+		boolean isValid(long now) {
+
+			if (isExpired(now))
+				return false;
+
+			if (!future.isCompletedExceptionally())
+				return true;
+
+			Throwable error = future.handle((value, ex) -> unwrap(ex)).join();
+
+			return error instanceof BaseException && !(error instanceof ConfirmationTimeoutException
+					|| error instanceof CommandRejectedException || error instanceof ItemLockedException
+					|| error instanceof StoreNotReadyException);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import es.redmic.exception.common.BaseException;
+
+/*
+ * Resultado de un comando ejecutado dentro de un lote. Contiene el resultado o
+ * la excepción con la que terminó.
+ */
+public class CommandResult<T> {
+
+	private T result;
+
+	private BaseException error;
+
+	private CommandResult(T result, BaseException error) {
+		this.result = result;
+		this.error = error;
+	}
+
+	public static <T> CommandResult<T> success(T result) {
+		return new CommandResult<>(result, null);
+	}
+
+	public static <T> CommandResult<T> error(BaseException error) {
+		return new CommandResult<>(null, error);
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	public T getResult() {
+		return result;
+	}
+
+	public BaseException getError() {
+		return error;
+	}
+}
@@ -0,0 +1,135 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Ejecutor compartido para resolver las peticiones asíncronas a partir de los
+ * eventos de confirmación. Puede resolverlas directamente en el hilo del
+ * listener de kafka (modo inline) o en un pool acotado. Si el pool está
+ * saturado, la tarea se ejecuta en el hilo que la envía, frenando así el
+ * consumo.
+ */
+public class ConfirmationDispatcher {
+
+	protected static Logger logger = LogManager.getLogger();
+
+	private final boolean inline;
+
+	private final ThreadPoolExecutor executor;
+
+	// @formatter:off
+
+	private final AtomicLong dispatchedCount = new AtomicLong(),
+			callerRunsCount = new AtomicLong(),
+			failedCount = new AtomicLong();
+
+	// @formatter:on
+
+	public ConfirmationDispatcher(boolean inline, int threads, int queueCapacity) {
+
+		this.inline = inline;
+
+		if (inline) {
+			executor = null;
+			return;
+		}
+
+		assert threads > 0;
+		assert queueCapacity > 0;
+
+		AtomicInteger threadCount = new AtomicInteger();
+
+		RejectedExecutionHandler callerRuns = (runnable, pool) -> {
+			if (!pool.isShutdown()) {
+				callerRunsCount.incrementAndGet();
+				runnable.run();
+			}
+		};
+
+		executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+					Thread thread = new Thread(runnable, "command-confirmation-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, callerRuns);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public void dispatch(Runnable task) {
+
+		dispatchedCount.incrementAndGet();
+
+		Runnable guardedTask = () -> {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				failedCount.incrementAndGet();
+				logger.error("Error resolviendo confirmación: " + e.getLocalizedMessage());
+			}
+		};
+
+		if (inline)
+			guardedTask.run();
+		else
+			executor.execute(guardedTask);
+	}
+
+	public void shutdown() {
+
+		if (executor != null)
+			executor.shutdown();
+	}
+
+	public boolean isInline() {
+		return inline;
+	}
+
+	public long getDispatchedCount() {
+		return dispatchedCount.get();
+	}
+
+	public long getCallerRunsCount() {
+		return callerRunsCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public int getQueueSize() {
+		return executor != null ? executor.getQueue().size() : 0;
+	}
+
+	public int getActiveCount() {
+		return executor != null ? executor.getActiveCount() : 0;
+	}
+}
@@ -0,0 +1,113 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+
+import es.redmic.commandslib.gateway.EventHeaders;
+
+/*
+ * Deserializer que descarta, sin llegar a deserializar, los registros cuyo tipo
+ * de evento (indicado en la cabecera) no interesa al handler. En ese caso
+ * devuelve null y el registro es descartado por el RecordFilterStrategy del
+ * contenedor. Los registros sin cabecera se deserializan siempre.
+ * 
+ * Opcionalmente descarta también los eventos de respuesta (los que resuelven
+ * peticiones) cuya sesión, indicada en la cabecera, no espera en esta
+ * instancia, de forma que cada nodo solo deserializa sus confirmaciones.
+ */
+public class EventTypeFilteringDeserializer<T> implements ExtendedDeserializer<T> {
+
+	private final ExtendedDeserializer<T> delegate;
+
+	private final Set<String> ignoredEventTypes;
+
+	private final Set<String> replyEventTypes;
+
+	private final Predicate<String> isPendingSession;
+
+	public EventTypeFilteringDeserializer(Deserializer<T> delegate, Set<String> ignoredEventTypes) {
+		this(delegate, ignoredEventTypes, Collections.emptySet(), sessionId -> true);
+	}
+
+	public EventTypeFilteringDeserializer(Deserializer<T> delegate, Set<String> ignoredEventTypes,
+			Set<String> replyEventTypes, Predicate<String> isPendingSession) {
+		this.delegate = ExtendedDeserializer.Wrapper.ensureExtended(delegate);
+		this.ignoredEventTypes = Collections.unmodifiableSet(new HashSet<>(ignoredEventTypes));
+		this.replyEventTypes = Collections.unmodifiableSet(new HashSet<>(replyEventTypes));
+		this.isPendingSession = isPendingSession;
+	}
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		delegate.configure(configs, isKey);
+	}
+
+	@Override
+	public T deserialize(String topic, byte[] data) {
+		return delegate.deserialize(topic, data);
+	}
+
+	@Override
+	public T deserialize(String topic, Headers headers, byte[] data) {
+
+		if (isIgnored(headers))
+			return null;
+
+		return delegate.deserialize(topic, headers, data);
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+
+	public boolean isIgnored(Headers headers) {
+
+		String eventType = EventHeaders.getEventType(headers);
+
+		if (eventType == null)
+			return false;
+
+		if (ignoredEventTypes.contains(eventType))
+			return true;
+
+		if (!replyEventTypes.contains(eventType))
+			return false;
+
+		String sessionId = EventHeaders.getSessionId(headers);
+
+		return sessionId != null && !isPendingSession.test(sessionId);
+	}
+
+	public Set<String> getIgnoredEventTypes() {
+		return ignoredEventTypes;
+	}
+}
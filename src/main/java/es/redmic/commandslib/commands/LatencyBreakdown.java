@@ -0,0 +1,74 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Desglose por etapas de la latencia de una petición, desde su registro hasta
+ * su resolución. Cada etapa mide el tiempo transcurrido desde la anterior. Las
+ * marcas de las cabeceras proceden de distintos servicios, por lo que se
+ * ordenan por tiempo, se descartan las anteriores al registro (pertenecen a
+ * otros eventos) y las diferencias negativas por desfase de relojes cuentan
+ * como 0.
+ */
+public class LatencyBreakdown {
+
+	// @formatter:off
+
+	public static final String RECEIVED_STAGE = "received",
+			RESOLVED_STAGE = "resolved";
+
+	// @formatter:on
+
+	private LatencyBreakdown() {
+	}
+
+	public static Map<String, Long> compute(long registeredAt, Map<String, Long> stages, long receivedAt,
+			long resolvedAt) {
+
+		List<Map.Entry<String, Long>> sorted = new ArrayList<>();
+
+		for (Map.Entry<String, Long> stage : stages.entrySet()) {
+			if (stage.getValue() >= registeredAt)
+				sorted.add(stage);
+		}
+		sorted.sort(Map.Entry.comparingByValue());
+
+		Map<String, Long> breakdown = new LinkedHashMap<>();
+
+		long previous = registeredAt;
+
+		for (Map.Entry<String, Long> stage : sorted) {
+			breakdown.put(stage.getKey(), Math.max(0, stage.getValue() - previous));
+			previous = Math.max(previous, stage.getValue());
+		}
+
+		breakdown.put(RECEIVED_STAGE, Math.max(0, receivedAt - previous));
+		breakdown.put(RESOLVED_STAGE, Math.max(0, resolvedAt - Math.max(previous, receivedAt)));
+
+		return breakdown;
+	}
+}
@@ -0,0 +1,120 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Histograma de latencias con cubetas de tamaño exponencial (error relativo
+ * acotado) que permite estimar percentiles en streaming con memoria constante.
+ * Cuando el número de muestras alcanza decayThreshold se dividen a la mitad
+ * todos los contadores, de forma que las muestras recientes pesan más.
+ */
+public class LatencySketch {
+
+	// Cada cubeta es un 10% mayor que la anterior (error relativo ~5%)
+	private static final double GROWTH = 1.1;
+
+	private static final double LOG_GROWTH = Math.log(GROWTH);
+
+	private final AtomicLongArray counts;
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final long decayThreshold;
+
+	private final AtomicBoolean decaying = new AtomicBoolean();
+
+	public LatencySketch(long maxValueMS, long decayThreshold) {
+
+		assert maxValueMS > 0;
+		assert decayThreshold > 1;
+
+		this.counts = new AtomicLongArray(bucketFor(maxValueMS) + 1);
+		this.decayThreshold = decayThreshold;
+	}
+
+	public void record(long latencyMS) {
+
+		counts.incrementAndGet(Math.min(counts.length() - 1, bucketFor(latencyMS)));
+
+		if (total.incrementAndGet() >= decayThreshold)
+			decay();
+	}
+
+	/*
+	 * Devuelve el límite superior (ms) de la cubeta que contiene el percentil q
+	 * (0 < q <= 1) o -1 si no hay muestras
+	 */
+	public long getPercentile(double q) {
+
+		long count = 0, totalCount = 0;
+
+		for (int i = 0; i < counts.length(); i++)
+			totalCount += counts.get(i);
+
+		if (totalCount == 0)
+			return -1;
+
+		long rank = (long) Math.ceil(q * totalCount);
+
+		for (int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+			if (count >= rank)
+				return upperBound(i);
+		}
+		return upperBound(counts.length() - 1);
+	}
+
+	public long getCount() {
+		return total.get();
+	}
+
+	private void decay() {
+
+		// Solo un hilo aplica el decaimiento; el resto continúa registrando
+		if (!decaying.compareAndSet(false, true))
+			return;
+
+		try {
+			long remaining = 0;
+			for (int i = 0; i < counts.length(); i++)
+				remaining += counts.updateAndGet(i, c -> c / 2);
+			total.set(remaining);
+		} finally {
+			decaying.set(false);
+		}
+	}
+
+	private static int bucketFor(long latencyMS) {
+
+		if (latencyMS <= 1)
+			return 0;
+		return (int) Math.ceil(Math.log(latencyMS) / LOG_GROWTH);
+	}
+
+	private static long upperBound(int bucket) {
+		return (long) Math.ceil(Math.pow(GROWTH, bucket));
+	}
+}
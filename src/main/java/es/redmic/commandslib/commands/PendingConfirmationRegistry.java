@@ -0,0 +1,277 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import es.redmic.commandslib.exceptions.ConfirmationTimeoutException;
+
+/*
+ * Registro de peticiones pendientes de confirmación, indexadas por sessionId.
+ * Es seguro para su uso concurrente desde los hilos de las peticiones y desde
+ * los listeners de kafka. Las esperas se ordenan por fecha límite en una cola
+ * de retardo que recorre un único hilo, de forma que las peticiones no
+ * confirmadas a tiempo se resuelven con ConfirmationTimeoutException sin
+ * bloquear ningún hilo y nunca quedan entradas huérfanas.
+ *
+ * La cola solo guarda el sessionId y la fecha límite de cada espera, por lo
+ * que las peticiones resueltas liberan su future y su callback de expiración en
+ * cuanto se completan. Los callbacks de expiración (que pueden enviar a kafka y
+ * bloquearse) se ejecutan en un pool propio para no retrasar al resto de
+ * expiraciones.
+ */
+public class PendingConfirmationRegistry {
+
+	protected static Logger logger = LogManager.getLogger();
+
+	private static final int DEFAULT_EXPIRY_THREADS = 2;
+
+	private final Map<String, PendingConfirmation> pending = new ConcurrentHashMap<>();
+
+	private final DelayQueue<Deadline> deadlines = new DelayQueue<>();
+
+	private final Thread sweeper;
+
+	private final ThreadPoolExecutor expiryExecutor;
+
+	// @formatter:off
+
+	private final AtomicLong registeredCount = new AtomicLong(),
+			completedCount = new AtomicLong(),
+			expiredCount = new AtomicLong();
+
+	// @formatter:on
+
+	public PendingConfirmationRegistry() {
+		this(DEFAULT_EXPIRY_THREADS);
+	}
+
+	public PendingConfirmationRegistry(int expiryThreads) {
+
+		assert expiryThreads > 0;
+
+		AtomicInteger threadCount = new AtomicInteger();
+
+		expiryExecutor = new ThreadPoolExecutor(expiryThreads, expiryThreads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable,
+							"command-confirmation-expiry-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		expiryExecutor.allowCoreThreadTimeOut(true);
+
+		sweeper = new Thread(() -> sweep(), "command-confirmation-sweeper");
+		sweeper.setDaemon(true);
+		sweeper.start();
+	}
+
+	/*
+	 * Registra una espera para el sessionId dado. Si no se resuelve antes de
+	 * timeoutMS se completa con ConfirmationTimeoutException y se ejecuta
+	 * onExpire (puede ser null) en el pool de expiración.
+	 */
+	public CompletableFuture<Object> register(String sessionId, long timeoutMS, Runnable onExpire) {
+
+		PendingConfirmation confirmation = new PendingConfirmation(sessionId, timeoutMS, onExpire);
+
+		PendingConfirmation previous = pending.put(sessionId, confirmation);
+
+		if (previous != null) {
+			logger.warn("Petición asíncrona ya registrada para sessionId: " + sessionId + ". Se reemplaza.");
+			previous.future.completeExceptionally(new ConfirmationTimeoutException());
+		}
+
+		deadlines.add(confirmation.deadline);
+		registeredCount.incrementAndGet();
+
+		return confirmation.future;
+	}
+
+	/*
+	 * Resuelve la espera asociada al sessionId. Devuelve false si no hay ninguna
+	 * espera registrada (ya resuelta, expirada o de otra instancia).
+	 */
+	public boolean complete(String sessionId, Object result) {
+
+		PendingConfirmation confirmation = pending.remove(sessionId);
+
+		if (confirmation == null)
+			return false;
+
+		completedCount.incrementAndGet();
+		confirmation.future.complete(result);
+		return true;
+	}
+
+	public void remove(String sessionId) {
+
+		pending.remove(sessionId);
+	}
+
+	/*
+	 * Fecha de registro (epoch ms) de la espera asociada al sessionId o -1 si no
+	 * existe
+	 */
+	public long getRegisteredAt(String sessionId) {
+
+		PendingConfirmation confirmation = pending.get(sessionId);
+
+		return confirmation != null ? confirmation.createdAt : -1;
+	}
+
+	public boolean contains(String sessionId) {
+
+		return pending.containsKey(sessionId);
+	}
+
+	public int size() {
+
+		return pending.size();
+	}
+
+	/*
+	 * Edad en milisegundos de la espera más antigua todavía pendiente.
+	 */
+	public long getOldestAgeMs() {
+
+		long now = System.currentTimeMillis(), oldest = now;
+
+		for (PendingConfirmation confirmation : pending.values()) {
+			oldest = Math.min(oldest, confirmation.createdAt);
+		}
+		return now - oldest;
+	}
+
+	public long getRegisteredCount() {
+		return registeredCount.get();
+	}
+
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+
+	public void shutdown() {
+
+		sweeper.interrupt();
+		expiryExecutor.shutdown();
+	}
+
+	private void sweep() {
+
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				expire(deadlines.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void expire(Deadline deadline) {
+
+		PendingConfirmation confirmation = pending.get(deadline.sessionId);
+
+		// Solo expira si sigue siendo la espera registrada (no resuelta ni
+		// reemplazada). Las esperas ya resueltas se descartan aquí al vencer su plazo
+		if (confirmation == null || confirmation.deadline != deadline
+				|| !pending.remove(deadline.sessionId, confirmation))
+			return;
+
+		expiredCount.incrementAndGet();
+
+		logger.error("Error. No se ha recibido confirmación para sessionId: " + deadline.sessionId);
+
+		if (confirmation.future.completeExceptionally(new ConfirmationTimeoutException())
+				&& confirmation.onExpire != null) {
+			expiryExecutor.execute(() -> runOnExpire(deadline.sessionId, confirmation.onExpire));
+		}
+	}
+
+	private void runOnExpire(String sessionId, Runnable onExpire) {
+
+		try {
+			onExpire.run();
+		} catch (RuntimeException e) {
+			logger.error("Error tratando la expiración de sessionId " + sessionId + ": " + e.getLocalizedMessage());
+		}
+	}
+
+	private static class PendingConfirmation {
+
+		private final long createdAt;
+
+		private final Deadline deadline;
+
+		private final Runnable onExpire;
+
+		private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+		PendingConfirmation(String sessionId, long timeoutMS, Runnable onExpire) {
+			this.createdAt = System.currentTimeMillis();
+			this.deadline = new Deadline(sessionId, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMS));
+			this.onExpire = onExpire;
+		}
+	}
+
+	/*
+	 * Entrada de la cola de retardo. No referencia a la espera para que esta se
+	 * libere en cuanto se resuelve
+	 */
+	private static class Deadline implements Delayed {
+
+		private final String sessionId;
+
+		private final long deadlineNanos;
+
+		Deadline(String sessionId, long deadlineNanos) {
+			this.sessionId = sessionId;
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package es.redmic.commandslib.config;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.beans.BeanUtils;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.util.ClassUtils;
+
+import es.redmic.commandslib.commands.EventTypeFilteringDeserializer;
+
+public class ListenerUtils {
+
+	/*
+	 * Crea una factoría de contenedores para los listeners de los handlers que
+	 * descarta por cabecera los tipos de evento indicados, evitando deserializar
+	 * los registros que el handler ignoraría.
+	 */
+	public static ConcurrentKafkaListenerContainerFactory<String, Object> eventTypeFilteredContainerFactory(
+			Map<String, Object> consumerProperties, Set<String> ignoredEventTypes) {
+
+		return eventTypeFilteredContainerFactory(consumerProperties, ignoredEventTypes, Collections.emptySet(),
+				sessionId -> true);
+	}
+
+	/*
+	 * Igual que la anterior, pero además descarta por cabecera los eventos de
+	 * respuesta cuya sesión no está pendiente en esta instancia.
+	 */
+	public static ConcurrentKafkaListenerContainerFactory<String, Object> eventTypeFilteredContainerFactory(
+			Map<String, Object> consumerProperties, Set<String> ignoredEventTypes, Set<String> replyEventTypes,
+			Predicate<String> isPendingSession) {
+
+		Map<String, Object> props = new HashMap<>(consumerProperties);
+
+		Deserializer<Object> valueDeserializer = getValueDeserializer(props);
+		valueDeserializer.configure(props, false);
+
+		ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+
+		factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(props, null,
+				new EventTypeFilteringDeserializer<>(valueDeserializer, ignoredEventTypes, replyEventTypes,
+						isPendingSession)));
+
+		// Los registros descartados por cabecera llegan con valor null
+		factory.setRecordFilterStrategy(record -> record.value() == null);
+
+		return factory;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Deserializer<Object> getValueDeserializer(Map<String, Object> props) {
+
+		Object deserializer = props.get(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG);
+
+		if (deserializer == null)
+			throw new IllegalArgumentException(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG + " no configurado");
+
+		Class<?> deserializerClass;
+
+		if (deserializer instanceof Class)
+			deserializerClass = (Class<?>) deserializer;
+		else
+			deserializerClass = ClassUtils.resolveClassName(deserializer.toString(), ClassUtils.getDefaultClassLoader());
+
+		return (Deserializer<Object>) BeanUtils.instantiateClass(deserializerClass);
+	}
+}
@@ -30,7 +30,10 @@ public enum ExceptionType implements ExceptionTypeItfc {
 	HISTORY_NOT_FOUND(Constants.HISTORY_NOT_FOUND),
 	CONFIRMATION_TIMEOUT(Constants.CONFIRMATION_TIMEOUT),
 	ITEM_LOCKED(Constants.ITEM_LOCKED),
-	ITEM_REFERENCED(Constants.ITEM_REFERENCED);
+	ITEM_REFERENCED(Constants.ITEM_REFERENCED),
+	COMMAND_REJECTED(Constants.COMMAND_REJECTED),
+	STORE_NOT_READY(Constants.STORE_NOT_READY),
+	IDEMPOTENCY_KEY_CONFLICT(Constants.IDEMPOTENCY_KEY_CONFLICT);
 	
 	// @formatter:on
 
@@ -62,7 +65,10 @@ public enum ExceptionType implements ExceptionTypeItfc {
 		public static final String HISTORY_NOT_FOUND = "HistoryNotFound",
 				CONFIRMATION_TIMEOUT = "ConfirmationTimeout",
 				ITEM_LOCKED = "ItemLocked",
-				ITEM_REFERENCED = "ItemReferenced";
+				ITEM_REFERENCED = "ItemReferenced",
+				COMMAND_REJECTED = "CommandRejected",
+				STORE_NOT_READY = "StoreNotReady",
+				IDEMPOTENCY_KEY_CONFLICT = "IdempotencyKeyConflict";
 		// @formatter:on
 	}
 
@@ -0,0 +1,40 @@
+package es.redmic.commandslib.exceptions;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import es.redmic.exception.common.BaseException;
+
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class IdempotencyKeyConflictException extends BaseException {
+
+	private static final long serialVersionUID = 1L;
+
+	public IdempotencyKeyConflictException(String idempotencyKey) {
+
+		super(ExceptionType.IDEMPOTENCY_KEY_CONFLICT);
+		setFieldErrors(Arrays.asList(idempotencyKey));
+	}
+}
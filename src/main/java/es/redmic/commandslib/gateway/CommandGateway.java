@@ -20,6 +20,9 @@ package es.redmic.commandslib.gateway;
  * #L%
  */
 
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,6 +34,9 @@ import org.springframework.util.concurrent.ListenableFuture;
 
 import es.redmic.brokerlib.avro.common.Event;
 import es.redmic.brokerlib.listener.SendListener;
+import es.redmic.commandslib.commands.CommandMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 @Component
 public class CommandGateway implements ApplicationListener<BrokerEvent> {
@@ -40,6 +46,9 @@ public class CommandGateway implements ApplicationListener<BrokerEvent> {
 	@Autowired
 	protected KafkaTemplate<String, Event> kafkaTemplate;
 
+	@Autowired(required = false)
+	protected MeterRegistry meterRegistry;
+
 	public CommandGateway() {
 	}
 
@@ -52,8 +61,38 @@ public class CommandGateway implements ApplicationListener<BrokerEvent> {
 
 		logger.debug("sending payload='{}' to topic='{}'", evt, topic);
 
-		ListenableFuture<SendResult<String, Event>> future = kafkaTemplate.send(topic, evt.getAggregateId(), evt);
+		ProducerRecord<String, Event> record = new ProducerRecord<>(topic, evt.getAggregateId(), evt);
+
+		// Añade el tipo de evento y sessionId como cabeceras para poder filtrar sin
+		// deserializar
+		EventHeaders.stamp(record.headers(), evt);
+		EventHeaders.stampStage(record.headers(), EventHeaders.GATEWAY_STAGE);
+
+		long start = System.nanoTime();
+
+		ListenableFuture<SendResult<String, Event>> future = kafkaTemplate.send(record);
 
 		future.addCallback(new SendListener());
+
+		if (meterRegistry != null)
+			recordSendLatency(future, topic, start);
+	}
+
+	/*
+	 * Registra el tiempo desde el envío hasta la confirmación (ack) de kafka
+	 */
+	private void recordSendLatency(ListenableFuture<SendResult<String, Event>> future, String topic,
+			long startNanos) {
+
+		future.addCallback(result -> getSendTimer(topic, CommandMetrics.OUTCOME_SUCCESS)
+				.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS),
+				ex -> getSendTimer(topic, CommandMetrics.OUTCOME_ERROR).record(System.nanoTime() - startNanos,
+						TimeUnit.NANOSECONDS));
+	}
+
+	private Timer getSendTimer(String topic, String outcome) {
+
+		return Timer.builder(CommandMetrics.GATEWAY_SEND_TIMER).tag(CommandMetrics.TOPIC_TAG, topic)
+				.tag(CommandMetrics.OUTCOME_TAG, outcome).publishPercentileHistogram().register(meterRegistry);
 	}
 }
@@ -0,0 +1,137 @@
+package es.redmic.commandslib.gateway;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import es.redmic.brokerlib.avro.common.Event;
+
+/*
+ * Cabeceras kafka que acompañan a los eventos. Permiten conocer el tipo de
+ * evento sin necesidad de deserializarlo.
+ */
+public final class EventHeaders {
+
+	public static final String EVENT_TYPE = "event-type";
+
+	public static final String SESSION_ID = "session-id";
+
+	// Prefijo de las marcas de tiempo (epoch ms) de cada etapa por la que pasa
+	// el evento
+	public static final String STAGE_PREFIX = "stage.";
+
+	public static final String GATEWAY_STAGE = "gateway";
+
+	private EventHeaders() {
+	}
+
+	/*
+	 * Sustituye las cabeceras del evento por las del evento dado. Si existían
+	 * (heredadas del registro de entrada en los streams), se eliminan para que no
+	 * queden valores obsoletos.
+	 */
+	public static void stamp(Headers headers, Event event) {
+
+		if (event == null)
+			stamp(headers, null, null);
+		else
+			stamp(headers, event.getType(), event.getSessionId());
+	}
+
+	public static void stamp(Headers headers, String eventType, String sessionId) {
+
+		headers.remove(EVENT_TYPE);
+		headers.remove(SESSION_ID);
+
+		if (eventType != null)
+			headers.add(EVENT_TYPE, eventType.getBytes(StandardCharsets.UTF_8));
+		if (sessionId != null)
+			headers.add(SESSION_ID, sessionId.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * Añade la marca de tiempo de la etapa actual. Las marcas de etapas
+	 * anteriores (heredadas del registro de entrada) se mantienen.
+	 */
+	public static void stampStage(Headers headers, String stage) {
+
+		String key = STAGE_PREFIX + stage;
+
+		headers.remove(key);
+		headers.add(key, Long.toString(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * Obtiene las marcas de tiempo de las etapas a partir de las cabeceras
+	 * mapeadas por spring (los valores pueden llegar como byte[] o String)
+	 */
+	public static Map<String, Long> getStages(Map<String, ?> headers) {
+
+		Map<String, Long> stages = new LinkedHashMap<>();
+
+		if (headers == null)
+			return stages;
+
+		for (Map.Entry<String, ?> entry : headers.entrySet()) {
+
+			if (!entry.getKey().startsWith(STAGE_PREFIX) || entry.getValue() == null)
+				continue;
+
+			Object value = entry.getValue();
+			String timestamp = (value instanceof byte[]) ? new String((byte[]) value, StandardCharsets.UTF_8)
+					: value.toString();
+
+			try {
+				stages.put(entry.getKey().substring(STAGE_PREFIX.length()), Long.valueOf(timestamp));
+			} catch (NumberFormatException e) {
+				// Marca no válida, se ignora
+			}
+		}
+		return stages;
+	}
+
+	public static String getEventType(Headers headers) {
+		return getValue(headers, EVENT_TYPE);
+	}
+
+	public static String getSessionId(Headers headers) {
+		return getValue(headers, SESSION_ID);
+	}
+
+	private static String getValue(Headers headers, String key) {
+
+		if (headers == null)
+			return null;
+
+		Header header = headers.lastHeader(key);
+
+		if (header == null || header.value() == null)
+			return null;
+
+		return new String(header.value(), StandardCharsets.UTF_8);
+	}
+}
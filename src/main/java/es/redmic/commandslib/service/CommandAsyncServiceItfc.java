@@ -0,0 +1,36 @@
+package es.redmic.commandslib.service;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.CompletableFuture;
+
+import es.redmic.brokerlib.avro.common.CommonDTO;
+
+public interface CommandAsyncServiceItfc<T extends CommonDTO> {
+
+	public CompletableFuture<T> createAsync(T item);
+
+	public CompletableFuture<T> updateAsync(String id, T item);
+
+	public CompletableFuture<T> deleteAsync(String id);
+
+}
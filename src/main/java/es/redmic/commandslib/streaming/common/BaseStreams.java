@@ -20,8 +20,18 @@ package es.redmic.commandslib.streaming.common;
  * #L%
  */
 
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
 import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.kstream.KGroupedStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.processor.StateRestoreListener;
 import org.apache.kafka.streams.state.QueryableStoreType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -45,6 +55,38 @@ public abstract class BaseStreams {
 
 	protected Long windowsTime;
 
+	protected RocksDBProfile rocksDBProfile;
+
+	protected long rocksDBMemoryBudget;
+
+	protected int rocksDBMaxStores;
+
+	protected StoreBackend storeBackend;
+
+	protected int lruMaxEntries;
+
+	protected boolean backgroundStart;
+
+	protected StateRestoreListener restoreListener;
+
+	// Runtime compartido en el que se registra el stream. Null si tiene su propio
+	// KafkaStreams
+	protected StreamsRuntime runtime;
+
+	// Tiempo de espera inicial y máximo entre intentos de acceder a un store
+	// @formatter:off
+	private static final long STORE_WAIT_INITIAL_BACKOFF_MS = 100,
+			STORE_WAIT_MAX_BACKOFF_MS = 5000;
+	// @formatter:on
+
+	private volatile ReadinessState readiness = ReadinessState.RESTORING;
+
+	// Se completa cuando el stream está arrancado y sus stores se pueden consultar
+	private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+	// postProcessStreams ha terminado
+	private boolean started;
+
 	protected final String SCHEMA_REGISTRY_URL_PROPERTY = "schema.registry.url";
 
 	protected KafkaStreams streams;
@@ -58,24 +100,196 @@ public abstract class BaseStreams {
 		this.bootstrapServers = config.getBootstrapServers();
 		this.schemaRegistry = config.getSchemaRegistry();
 		this.windowsTime = config.getWindowsTime();
+		this.rocksDBProfile = config.getRocksDBProfile();
+		this.rocksDBMemoryBudget = config.getRocksDBMemoryBudget();
+		this.rocksDBMaxStores = config.getRocksDBMaxStores();
+		this.storeBackend = config.getStoreBackend();
+		this.lruMaxEntries = config.getLruMaxEntries();
+		this.backgroundStart = config.isBackgroundStart();
+		this.restoreListener = config.getRestoreListener() != null ? config.getRestoreListener()
+				: new RestoreProgressListener();
+		this.runtime = config.getRuntime();
 		this.alertService = alertService;
 	}
 
 	protected void init() {
 
+		// El runtime construye la topología y arranca el KafkaStreams compartido
+		if (runtime != null) {
+			runtime.register(this);
+			return;
+		}
+
 		streams = processStreams();
 
 		streams.setUncaughtExceptionHandler(
 				(Thread thread, Throwable throwable) -> uncaughtException(thread, throwable));
 
-		streams.start();
+		streams.setStateListener((newState, oldState) -> updateReadiness(newState));
 
-		postProcessStreams();
+		streams.setGlobalStateRestoreListener(restoreListener);
+
+		if (backgroundStart) {
+			// La restauración de los stores no bloquea el arranque del servicio
+			Thread starter = new Thread(this::start, "stream-starter-" + serviceId);
+			starter.setDaemon(true);
+			starter.start();
+		} else {
+			start();
+		}
 
 		addShutdownHookAndBlock();
 	}
 
-	protected abstract KafkaStreams processStreams();
+	private void start() {
+
+		long startTime = System.currentTimeMillis();
+
+		try {
+			streams.start();
+
+			completeStart();
+		} catch (RuntimeException e) {
+			failStart(e);
+			if (!backgroundStart)
+				throw e;
+			return;
+		}
+
+		logger.info("Stream " + serviceId + " arrancado en " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/*
+	 * Asigna el KafkaStreams compartido de un StreamsRuntime
+	 */
+	void attach(KafkaStreams streams) {
+		this.streams = streams;
+	}
+
+	/*
+	 * Tareas tras arrancar el KafkaStreams: espera a los stores y marca el stream
+	 * como disponible
+	 */
+	void completeStart() {
+
+		postProcessStreams();
+
+		synchronized (this) {
+			started = true;
+			updateReadiness(streams.state());
+		}
+	}
+
+	void failStart(RuntimeException e) {
+
+		logger.error("Error arrancando el stream " + serviceId + ": " + e.getLocalizedMessage());
+		readiness = ReadinessState.FAILED;
+		ready.completeExceptionally(e);
+	}
+
+	/*
+	 * Calcula la disponibilidad a partir del estado de kafka streams. Solo está
+	 * disponible si además ha terminado postProcessStreams
+	 */
+	synchronized void updateReadiness(KafkaStreams.State state) {
+
+		switch (state) {
+		case RUNNING:
+			if (started) {
+				readiness = ReadinessState.READY;
+				ready.complete(null);
+			}
+			break;
+		case CREATED:
+		case REBALANCING:
+			readiness = ready.isDone() ? ReadinessState.REBALANCING : ReadinessState.RESTORING;
+			break;
+		case ERROR:
+			readiness = ReadinessState.FAILED;
+			ready.completeExceptionally(new IllegalStateException("Stream " + serviceId + " en estado de error"));
+			break;
+		default:
+			readiness = ReadinessState.STOPPED;
+			ready.completeExceptionally(new IllegalStateException("Stream " + serviceId + " parado"));
+			break;
+		}
+	}
+
+	public ReadinessState getReadiness() {
+		return readiness;
+	}
+
+	public boolean isReady() {
+		return readiness == ReadinessState.READY;
+	}
+
+	/*
+	 * Se completa la primera vez que el stream está disponible, o con error si
+	 * falla o se para antes
+	 */
+	public CompletableFuture<Void> whenReady() {
+		return ready.thenApply(v -> v);
+	}
+
+	public String getServiceId() {
+		return serviceId;
+	}
+
+	/*
+	 * Crea (y por tanto arranca) un stream en un hilo propio, de forma que varios
+	 * streams restauran sus stores en paralelo en lugar de uno detrás de otro
+	 */
+	public static <T extends BaseStreams> CompletableFuture<T> createAsync(Supplier<T> factory, String name) {
+
+		return CompletableFuture.supplyAsync(factory, task -> {
+			Thread starter = new Thread(task, "stream-init-" + name);
+			starter.setDaemon(true);
+			starter.start();
+		});
+	}
+
+	/*
+	 * Espera a un stream creado con createAsync, relanzando el error original si
+	 * no se ha podido crear
+	 */
+	public static <T extends BaseStreams> T join(CompletableFuture<T> stream) {
+
+		try {
+			return stream.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	/*
+	 * Crea el KafkaStreams propio del stream a partir de su topología
+	 */
+	protected KafkaStreams processStreams() {
+
+		StreamsBuilder builder = new StreamsBuilder();
+
+		buildTopology(builder);
+
+		return new KafkaStreams(builder.build(), streamsConfig());
+	}
+
+	/*
+	 * Añade la topología del stream al builder dado, que puede ser el de un
+	 * StreamsRuntime compartido con otros streams
+	 */
+	protected abstract void buildTopology(StreamsBuilder builder);
+
+	/*
+	 * Configuración del stream, incluyendo la de sus stores de RocksDB
+	 */
+	protected Properties streamsConfig() {
+
+		return StreamUtils.rocksDBConfig(
+				StreamUtils.baseStreamsConfig(bootstrapServers, stateStoreDir, serviceId, schemaRegistry),
+				rocksDBProfile, rocksDBMemoryBudget, rocksDBMaxStores);
+	}
 
 	protected abstract void postProcessStreams();
 
@@ -102,21 +316,49 @@ public abstract class BaseStreams {
 		streams.close();
 	}
 
+	/*
+	 * Tabla con el último evento de cada clave, almacenada según storeBackend. Con
+	 * RocksDB no se da nombre al store para conservar los topics internos ya
+	 * existentes
+	 */
+	protected KTable<String, Event> reduceToLatest(KGroupedStream<String, Event> events, String storeName) {
+
+		if (storeBackend == StoreBackend.ROCKSDB)
+			return events.reduce((aggValue, newValue) -> newValue);
+
+		return events.reduce((aggValue, newValue) -> newValue,
+				Materialized.as(storeBackend.supplier(storeName, lruMaxEntries)));
+	}
+
 	/*
 	 * En ocaciones el store se bloquea debido a operaciones de rebalanceo de kafka.
-	 * Esta función permite esperar hasta que sea accesible.
+	 * Esta función permite esperar hasta que sea accesible, espaciando los intentos
+	 * de forma exponencial. Deja de esperar si el stream se para o se interrumpe el
+	 * hilo.
 	 */
 
 	protected static <T> T waitUntilStoreIsQueryable(final String storeName,
 			final QueryableStoreType<T> queryableStoreType, final KafkaStreams streams) {
+
+		long backoff = STORE_WAIT_INITIAL_BACKOFF_MS;
+
 		while (true) {
 			try {
 				return streams.store(storeName, queryableStoreType);
-			} catch (InvalidStateStoreException ignored) {
+			} catch (InvalidStateStoreException e) {
+
+				KafkaStreams.State state = streams.state();
+				if (state == KafkaStreams.State.PENDING_SHUTDOWN || state == KafkaStreams.State.NOT_RUNNING
+						|| state == KafkaStreams.State.ERROR)
+					throw e;
+
 				try {
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
+					Thread.sleep(backoff);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
 				}
+				backoff = Math.min(backoff * 2, STORE_WAIT_MAX_BACKOFF_MS);
 			}
 		}
 	}
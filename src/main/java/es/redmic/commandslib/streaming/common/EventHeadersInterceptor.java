@@ -0,0 +1,70 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import es.redmic.commandslib.gateway.EventHeaders;
+import es.redmic.commandslib.streaming.common.EventHeadersSerde.SerializedEvent;
+
+/*
+ * Interceptor del productor de los streams. Kafka streams propaga las
+ * cabeceras del registro de entrada a los de salida, por lo que sustituye las
+ * cabeceras del evento por las del evento que realmente se envía, serializado
+ * justo antes por EventHeadersSerde, y añade la marca de tiempo de la etapa
+ * (el tipo del evento). Si el registro no corresponde con el último evento
+ * serializado solo elimina las cabeceras heredadas.
+ */
+public class EventHeadersInterceptor implements ProducerInterceptor<byte[], byte[]> {
+
+	@Override
+	public ProducerRecord<byte[], byte[]> onSend(ProducerRecord<byte[], byte[]> record) {
+
+		SerializedEvent serialized = EventHeadersSerde.takeLastSerialized();
+
+		if (serialized == null || !record.topic().equals(serialized.topic)) {
+			EventHeaders.stamp(record.headers(), null, null);
+			return record;
+		}
+
+		EventHeaders.stamp(record.headers(), serialized.type, serialized.sessionId);
+
+		if (serialized.type != null)
+			EventHeaders.stampStage(record.headers(), serialized.type);
+		return record;
+	}
+
+	@Override
+	public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+	}
+
+	@Override
+	public void configure(Map<String, ?> configs) {
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,122 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Map;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import es.redmic.brokerlib.avro.common.Event;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+
+/*
+ * Serde de valores por defecto de los streams. Delega en SpecificAvroSerde y,
+ * al serializar un evento, guarda en el hilo su topic, tipo y sesión para que
+ * EventHeadersInterceptor actualice las cabeceras del registro que el
+ * productor del stream envía a continuación desde el mismo hilo. Así las
+ * cabeceras se corresponden con el evento enviado sin añadir nodos a la
+ * topología
+ */
+public class EventHeadersSerde<T extends SpecificRecord> implements Serde<T> {
+
+	private static final ThreadLocal<SerializedEvent> lastSerialized = new ThreadLocal<>();
+
+	private final Serde<T> delegate;
+
+	private final Serializer<T> serializer = new Serializer<T>() {
+
+		@Override
+		public void configure(Map<String, ?> configs, boolean isKey) {
+			delegate.serializer().configure(configs, isKey);
+		}
+
+		@Override
+		public byte[] serialize(String topic, T data) {
+
+			if (data instanceof Event) {
+				Event event = (Event) data;
+				lastSerialized.set(new SerializedEvent(topic, event.getType(), event.getSessionId()));
+			}
+			return delegate.serializer().serialize(topic, data);
+		}
+
+		@Override
+		public void close() {
+			delegate.serializer().close();
+		}
+	};
+
+	public EventHeadersSerde() {
+		this(new SpecificAvroSerde<>());
+	}
+
+	EventHeadersSerde(Serde<T> delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		delegate.configure(configs, isKey);
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+
+	@Override
+	public Serializer<T> serializer() {
+		return serializer;
+	}
+
+	@Override
+	public Deserializer<T> deserializer() {
+		return delegate.deserializer();
+	}
+
+	/*
+	 * Devuelve y olvida el último evento serializado por el hilo
+	 */
+	static SerializedEvent takeLastSerialized() {
+
+		SerializedEvent serialized = lastSerialized.get();
+		lastSerialized.remove();
+		return serialized;
+	}
+
+	static class SerializedEvent {
+
+		final String topic;
+
+		final String type;
+
+		final String sessionId;
+
+		SerializedEvent(String topic, String type, String sessionId) {
+			this.topic = topic;
+			this.type = type;
+			this.sessionId = sessionId;
+		}
+	}
+}
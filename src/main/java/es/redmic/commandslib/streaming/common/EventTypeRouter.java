@@ -0,0 +1,81 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Predicate;
+
+import es.redmic.brokerlib.avro.common.Event;
+
+/*
+ * Reparte un stream de eventos en un substream por tipo de evento con un único
+ * nodo branch. Cada registro pasa por un solo nodo, que evalúa los predicados
+ * en orden y se detiene en el primero que coincide, en lugar de pasar por un
+ * filter por tipo. Los eventos de tipos no registrados se descartan.
+ * 
+ * Añadir el router cambia los índices de los nodos de la topología y, con
+ * ellos, los nombres de los topics internos, por lo que activarlo requiere
+ * resetear la aplicación del stream
+ */
+public class EventTypeRouter {
+
+	private final List<String> eventTypes;
+
+	public EventTypeRouter(Collection<String> eventTypes) {
+
+		this.eventTypes = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(eventTypes)));
+
+		if (this.eventTypes.isEmpty())
+			throw new IllegalArgumentException("Es necesario al menos un tipo de evento para enrutar");
+	}
+
+	@SuppressWarnings("unchecked")
+	public Map<String, KStream<String, Event>> route(KStream<String, Event> events) {
+
+		Predicate<String, Event>[] predicates = new Predicate[eventTypes.size()];
+
+		for (int i = 0; i < predicates.length; i++) {
+			String eventType = eventTypes.get(i);
+			predicates[i] = (id, event) -> (eventType.equals(event.getType()));
+		}
+
+		KStream<String, Event>[] branches = events.branch(predicates);
+
+		Map<String, KStream<String, Event>> routedEvents = new LinkedHashMap<>();
+
+		for (int i = 0; i < branches.length; i++)
+			routedEvents.put(eventTypes.get(i), branches[i]);
+
+		return routedEvents;
+	}
+
+	public List<String> getEventTypes() {
+		return eventTypes;
+	}
+}
@@ -0,0 +1,39 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/*
+ * Estado de disponibilidad de un stream y de sus stores
+ */
+public enum ReadinessState {
+
+	// @formatter:off
+
+	// Arrancando o restaurando los stores. Aún no se pueden consultar
+	RESTORING,
+	READY,
+	// Rebalanceo tras haber estado disponible
+	REBALANCING,
+	STOPPED,
+	FAILED;
+
+	// @formatter:on
+}
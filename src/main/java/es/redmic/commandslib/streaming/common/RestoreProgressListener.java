@@ -0,0 +1,268 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.processor.StateRestoreListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Informa del progreso de la restauración de los stores (registros por segundo
+ * y tiempo estimado restante) en el log y mediante los totales que se exponen
+ * como métricas. Puede compartirse entre varios streams
+ */
+public class RestoreProgressListener implements StateRestoreListener {
+
+	protected static Logger logger = LogManager.getLogger();
+
+	// Intervalo mínimo entre mensajes de progreso de un mismo store
+	private static final long LOG_INTERVAL_MS = 10000;
+
+	private final Map<String, RestoreProgress> restores = new ConcurrentHashMap<>();
+
+	private final LongSupplier clock;
+
+	public RestoreProgressListener() {
+		this(System::currentTimeMillis);
+	}
+
+	RestoreProgressListener(LongSupplier clock) {
+		this.clock = clock;
+	}
+
+	@Override
+	public void onRestoreStart(TopicPartition topicPartition, String storeName, long startingOffset,
+			long endingOffset) {
+
+		RestoreProgress progress = new RestoreProgress(storeName, topicPartition.topic(), topicPartition.partition(),
+				endingOffset - startingOffset, clock.getAsLong());
+
+		restores.put(getKey(topicPartition, storeName), progress);
+
+		logger.info("Restaurando " + progress.getName() + ": " + progress.getTotalRecords() + " registros");
+	}
+
+	@Override
+	public void onBatchRestored(TopicPartition topicPartition, String storeName, long batchEndOffset,
+			long numRestored) {
+
+		RestoreProgress progress = restores.get(getKey(topicPartition, storeName));
+
+		if (progress == null)
+			return;
+
+		long now = clock.getAsLong();
+
+		progress.add(numRestored);
+
+		if (progress.shouldLog(now, LOG_INTERVAL_MS))
+			logger.info("Restaurando " + progress.getName() + ": " + progress.getRestoredRecords() + "/"
+					+ progress.getTotalRecords() + " registros, " + Math.round(progress.getRecordsPerSecond(now))
+					+ " registros/s, quedan " + progress.getEtaSeconds(now) + " s");
+	}
+
+	@Override
+	public void onRestoreEnd(TopicPartition topicPartition, String storeName, long totalRestored) {
+
+		RestoreProgress progress = restores.get(getKey(topicPartition, storeName));
+
+		if (progress == null)
+			return;
+
+		long now = clock.getAsLong();
+
+		progress.finish(now);
+
+		logger.info("Restaurado " + progress.getName() + ": " + totalRestored + " registros en "
+				+ (now - progress.getStartTime()) + " ms (" + Math.round(progress.getRecordsPerSecond(now))
+				+ " registros/s)");
+	}
+
+	/*
+	 * Clave de la restauración. Incluye el topic (changelog o topic fuente),
+	 * ya que al compartirse entre varios KafkaStreams pueden repetirse los nombres
+	 * de los stores, p.ej. los generados automáticamente
+	 */
+	private static String getKey(TopicPartition topicPartition, String storeName) {
+		return topicPartition.topic() + "-" + topicPartition.partition() + "-" + storeName;
+	}
+
+	/*
+	 * Registros pendientes de restaurar en todos los stores
+	 */
+	public long getRemainingRecords() {
+
+		long remaining = 0;
+
+		for (RestoreProgress progress : restores.values())
+			remaining += progress.getRemainingRecords();
+		return remaining;
+	}
+
+	/*
+	 * Suma de las velocidades de restauración de los stores que se están
+	 * restaurando
+	 */
+	public double getRecordsPerSecond() {
+
+		long now = clock.getAsLong();
+		double rate = 0;
+
+		for (RestoreProgress progress : restores.values())
+			if (!progress.isFinished())
+				rate += progress.getRecordsPerSecond(now);
+		return rate;
+	}
+
+	/*
+	 * Tiempo estimado (s) hasta que termine de restaurarse el último store. -1 si
+	 * aún no se puede estimar
+	 */
+	public long getEtaSeconds() {
+
+		long now = clock.getAsLong();
+		long eta = 0;
+
+		for (RestoreProgress progress : restores.values()) {
+
+			if (progress.isFinished())
+				continue;
+
+			long storeEta = progress.getEtaSeconds(now);
+			if (storeEta < 0)
+				return -1;
+			eta = Math.max(eta, storeEta);
+		}
+		return eta;
+	}
+
+	public int getActiveRestores() {
+
+		int active = 0;
+
+		for (RestoreProgress progress : restores.values())
+			if (!progress.isFinished())
+				active++;
+		return active;
+	}
+
+	/*
+	 * Progreso de la restauración de una partición de un store
+	 */
+	static class RestoreProgress {
+
+		private final String storeName;
+
+		private final String topic;
+
+		private final int partition;
+
+		private final long totalRecords;
+
+		private final long startTime;
+
+		private final AtomicLong restoredRecords = new AtomicLong();
+
+		private volatile long lastLogTime;
+
+		private volatile long endTime = -1;
+
+		RestoreProgress(String storeName, String topic, int partition, long totalRecords, long startTime) {
+			this.storeName = storeName;
+			this.topic = topic;
+			this.partition = partition;
+			this.totalRecords = totalRecords;
+			this.startTime = startTime;
+			this.lastLogTime = startTime;
+		}
+
+		void add(long records) {
+			restoredRecords.addAndGet(records);
+		}
+
+		void finish(long now) {
+			endTime = now;
+		}
+
+		synchronized boolean shouldLog(long now, long interval) {
+
+			if (now - lastLogTime < interval)
+				return false;
+
+			lastLogTime = now;
+			return true;
+		}
+
+		double getRecordsPerSecond(long now) {
+
+			long elapsed = (isFinished() ? endTime : now) - startTime;
+
+			if (elapsed <= 0)
+				return 0;
+			return restoredRecords.get() * 1000.0 / elapsed;
+		}
+
+		long getEtaSeconds(long now) {
+
+			if (isFinished())
+				return 0;
+
+			double rate = getRecordsPerSecond(now);
+
+			if (rate <= 0)
+				return -1;
+			return Math.round(getRemainingRecords() / rate);
+		}
+
+		long getRemainingRecords() {
+
+			if (isFinished())
+				return 0;
+			return Math.max(0, totalRecords - restoredRecords.get());
+		}
+
+		boolean isFinished() {
+			return endTime >= 0;
+		}
+
+		String getName() {
+			return "store " + storeName + " (" + topic + ", partición " + partition + ")";
+		}
+
+		long getTotalRecords() {
+			return totalRecords;
+		}
+
+		long getRestoredRecords() {
+			return restoredRecords.get();
+		}
+
+		long getStartTime() {
+			return startTime;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.CompressionType;
+import org.rocksdb.Options;
+
+/*
+ * Perfiles de configuración de RocksDB para los stores de kafka streams. Si se
+ * indica un límite de memoria por store, la caché de bloques y los buffers de
+ * escritura se reducen para no superarlo.
+ */
+public enum RocksDBProfile {
+
+	// @formatter:off
+
+	// Configuración por defecto de kafka streams (solo se limita la memoria si se
+	// indica un límite)
+	DEFAULT(50L << 20, 16L << 20, 3, false, CompressionType.NO_COMPRESSION),
+	// Lecturas puntuales (state stores): caché de bloques grande y filtros de bloom
+	// para descartar claves inexistentes sin leer disco
+	POINT_LOOKUP(64L << 20, 16L << 20, 3, true, CompressionType.NO_COMPRESSION),
+	// Escrituras intensivas (joins, agregaciones): buffers de escritura grandes
+	WRITE_HEAVY(16L << 20, 64L << 20, 4, true, CompressionType.LZ4_COMPRESSION),
+	// Memoria mínima. Índices y filtros se guardan en la caché para que cuenten
+	// dentro del límite
+	MEMORY_CAPPED(8L << 20, 4L << 20, 2, true, CompressionType.LZ4_COMPRESSION);
+
+	// @formatter:on
+
+	private static final long BLOCK_SIZE = 4096;
+
+	private static final int BLOOM_FILTER_BITS_PER_KEY = 10;
+
+	private final long blockCacheBytes;
+
+	private final long writeBufferBytes;
+
+	private final int maxWriteBuffers;
+
+	private final boolean bloomFilter;
+
+	private final CompressionType compressionType;
+
+	RocksDBProfile(long blockCacheBytes, long writeBufferBytes, int maxWriteBuffers, boolean bloomFilter,
+			CompressionType compressionType) {
+		this.blockCacheBytes = blockCacheBytes;
+		this.writeBufferBytes = writeBufferBytes;
+		this.maxWriteBuffers = maxWriteBuffers;
+		this.bloomFilter = bloomFilter;
+		this.compressionType = compressionType;
+	}
+
+	/*
+	 * Aplica el perfil. memoryLimitBytes es la memoria máxima del store (caché de
+	 * bloques + buffers de escritura), 0 sin límite
+	 */
+	public void apply(Options options, long memoryLimitBytes) {
+
+		// Workaround: We must ensure that the parallelism is set to >= 2. There seems
+		// to be a known issue with RocksDB where explicitly setting the parallelism to
+		// 1 causes issues (even though 1 seems to be RocksDB's default for this
+		// configuration).
+		options.setIncreaseParallelism(Math.max(Runtime.getRuntime().availableProcessors(), 2));
+
+		if (this == DEFAULT && memoryLimitBytes <= 0)
+			return;
+
+		long cacheBytes = blockCacheBytes, bufferBytes = writeBufferBytes;
+
+		// La mitad del límite para la caché y la otra mitad para los buffers
+		if (memoryLimitBytes > 0) {
+			cacheBytes = Math.min(cacheBytes, memoryLimitBytes / 2);
+			bufferBytes = Math.min(bufferBytes, memoryLimitBytes / 2 / maxWriteBuffers);
+		}
+
+		BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
+		tableConfig.setBlockCacheSize(cacheBytes);
+		tableConfig.setBlockSize(BLOCK_SIZE);
+
+		if (bloomFilter)
+			tableConfig.setFilter(new BloomFilter(BLOOM_FILTER_BITS_PER_KEY, false));
+
+		// Con límite, índices y filtros dentro de la caché (si no, crecen sin control
+		// con el número de ficheros)
+		if (memoryLimitBytes > 0 || this == MEMORY_CAPPED)
+			tableConfig.setCacheIndexAndFilterBlocks(true);
+
+		options.setTableFormatConfig(tableConfig);
+		options.setWriteBufferSize(bufferBytes);
+		options.setMaxWriteBufferNumber(maxWriteBuffers);
+		options.setCompressionType(compressionType);
+	}
+
+	public long getBlockCacheBytes() {
+		return blockCacheBytes;
+	}
+
+	public long getWriteBufferBytes() {
+		return writeBufferBytes;
+	}
+
+	public int getMaxWriteBuffers() {
+		return maxWriteBuffers;
+	}
+}
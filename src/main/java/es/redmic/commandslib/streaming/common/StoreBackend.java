@@ -0,0 +1,56 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.apache.kafka.streams.state.Stores;
+
+/*
+ * Tipo de almacenamiento de los stores de kafka streams.
+ * 
+ * Los stores en memoria evitan la memoria nativa y el disco de RocksDB, pero se
+ * restauran completos desde kafka en cada arranque. LRU además descarta las
+ * claves menos usadas al superar el máximo de entradas, por lo que solo es
+ * válido si perder esas claves es aceptable (p.ej. tablas de peticiones en
+ * curso), nunca para un StateStore que deba contener todos los items.
+ */
+public enum StoreBackend {
+
+	// @formatter:off
+
+	ROCKSDB,
+	IN_MEMORY,
+	LRU;
+
+	// @formatter:on
+
+	public KeyValueBytesStoreSupplier supplier(String name, int lruMaxEntries) {
+
+		switch (this) {
+		case IN_MEMORY:
+			return Stores.inMemoryKeyValueStore(name);
+		case LRU:
+			return Stores.lruMap(name, lruMaxEntries);
+		default:
+			return Stores.persistentKeyValueStore(name);
+		}
+	}
+}
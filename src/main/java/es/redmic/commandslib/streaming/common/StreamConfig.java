@@ -20,6 +20,8 @@ package es.redmic.commandslib.streaming.common;
  * #L%
  */
 
+import org.apache.kafka.streams.processor.StateRestoreListener;
+
 public class StreamConfig {
 
 	private String schemaRegistry;
@@ -34,6 +36,34 @@ public class StreamConfig {
 
 	private Long windowsTime;
 
+	private long nearCacheMaxWeight;
+
+	private long keyFilterExpectedKeys;
+
+	private boolean indexesEnabled;
+
+	private boolean headerIndexEnabled;
+
+	private boolean backgroundStart;
+
+	private StateRestoreListener restoreListener;
+
+	private StreamsRuntime runtime;
+
+	private boolean snapshotFromEvents;
+
+	private boolean typeRouting;
+
+	private RocksDBProfile rocksDBProfile;
+
+	private long rocksDBMemoryBudget;
+
+	private int rocksDBMaxStores;
+
+	private StoreBackend storeBackend;
+
+	private int lruMaxEntries;
+
 	public StreamConfig(Builder builder) {
 		this.topic = builder.topic;
 		this.stateStoreDir = builder.stateStoreDir;
@@ -41,12 +71,30 @@ public class StreamConfig {
 		this.bootstrapServers = builder.bootstrapServers;
 		this.schemaRegistry = builder.schemaRegistry;
 		this.windowsTime = builder.windowsTime;
+		this.nearCacheMaxWeight = builder.nearCacheMaxWeight;
+		this.keyFilterExpectedKeys = builder.keyFilterExpectedKeys;
+		this.indexesEnabled = builder.indexesEnabled;
+		this.headerIndexEnabled = builder.headerIndexEnabled;
+		this.backgroundStart = builder.backgroundStart;
+		this.restoreListener = builder.restoreListener;
+		this.runtime = builder.runtime;
+		this.snapshotFromEvents = builder.snapshotFromEvents;
+		this.typeRouting = builder.typeRouting;
+		this.rocksDBProfile = builder.rocksDBProfile;
+		this.rocksDBMemoryBudget = builder.rocksDBMemoryBudget;
+		this.rocksDBMaxStores = builder.rocksDBMaxStores;
+		this.storeBackend = builder.storeBackend;
+		this.lruMaxEntries = builder.lruMaxEntries;
 	}
 
 	public static class Builder {
 
 		private static final long DEFAULT_WINDOWS_TIME_MS = 60000;
 
+		private static final int DEFAULT_ROCKSDB_MAX_STORES = 16;
+
+		private static final int DEFAULT_LRU_MAX_ENTRIES = 10000;
+
 		private String bootstrapServers;
 
 		private String schemaRegistry;
@@ -59,6 +107,34 @@ public class StreamConfig {
 
 		private Long windowsTime;
 
+		private long nearCacheMaxWeight;
+
+		private long keyFilterExpectedKeys;
+
+		private boolean indexesEnabled;
+
+		private boolean headerIndexEnabled;
+
+		private boolean backgroundStart;
+
+		private StateRestoreListener restoreListener;
+
+		private StreamsRuntime runtime;
+
+		private boolean snapshotFromEvents;
+
+		private boolean typeRouting;
+
+		private RocksDBProfile rocksDBProfile = RocksDBProfile.DEFAULT;
+
+		private long rocksDBMemoryBudget;
+
+		private int rocksDBMaxStores = DEFAULT_ROCKSDB_MAX_STORES;
+
+		private StoreBackend storeBackend = StoreBackend.ROCKSDB;
+
+		private int lruMaxEntries = DEFAULT_LRU_MAX_ENTRIES;
+
 		public static Builder bootstrapServers(String bootstrapServers) {
 			Builder builder = new Builder();
 			builder.bootstrapServers = bootstrapServers;
@@ -90,6 +166,125 @@ public class StreamConfig {
 			return this;
 		}
 
+		/*
+		 * Peso máximo de la caché en memoria de los state stores (0 = desactivada)
+		 */
+		public Builder nearCacheMaxWeight(long nearCacheMaxWeight) {
+			this.nearCacheMaxWeight = nearCacheMaxWeight;
+			return this;
+		}
+
+		/*
+		 * Número de claves esperado en el filtro de claves de los state stores (0 =
+		 * desactivado). El filtro crece si se supera
+		 */
+		public Builder keyFilterExpectedKeys(long keyFilterExpectedKeys) {
+			this.keyFilterExpectedKeys = keyFilterExpectedKeys;
+			return this;
+		}
+
+		/*
+		 * Activa los índices secundarios que defina cada state store
+		 */
+		public Builder indexesEnabled(boolean indexesEnabled) {
+			this.indexesEnabled = indexesEnabled;
+			return this;
+		}
+
+		/*
+		 * Mantiene en memoria las cabeceras de los estados del state store. Ocupa
+		 * una entrada en el heap por cada id del store (ver HeaderIndex)
+		 */
+		public Builder headerIndexEnabled(boolean headerIndexEnabled) {
+			this.headerIndexEnabled = headerIndexEnabled;
+			return this;
+		}
+
+		/*
+		 * Arranca el stream y espera a sus stores en segundo plano, sin bloquear al
+		 * que lo crea
+		 */
+		public Builder backgroundStart(boolean backgroundStart) {
+			this.backgroundStart = backgroundStart;
+			return this;
+		}
+
+		/*
+		 * Listener de la restauración de los stores. Por defecto cada stream informa
+		 * del progreso en el log con su propio RestoreProgressListener
+		 */
+		public Builder restoreListener(StateRestoreListener restoreListener) {
+			this.restoreListener = restoreListener;
+			return this;
+		}
+
+		/*
+		 * Registra el stream en un runtime compartido en lugar de crear su propio
+		 * KafkaStreams. La configuración de kafka streams es entonces la del runtime
+		 */
+		public Builder runtime(StreamsRuntime runtime) {
+			this.runtime = runtime;
+			return this;
+		}
+
+		/*
+		 * Construye la tabla de snapshots directamente con los eventos finales del
+		 * topic principal en lugar de consumirlos de nuevo desde el topic snapshot.
+		 * Los eventos escritos en el topic snapshot por otros productores dejan de
+		 * reflejarse en la tabla, aunque los eventos finales se sigan reenviando a
+		 * él. Cambia el origen del reduce y su changelog, por lo que activarlo o
+		 * desactivarlo en un despliegue existente requiere resetear la aplicación
+		 * del stream
+		 */
+		public Builder snapshotFromEvents(boolean snapshotFromEvents) {
+			this.snapshotFromEvents = snapshotFromEvents;
+			return this;
+		}
+
+		/*
+		 * Reparte los eventos del topic principal una única vez por tipo en lugar de
+		 * filtrar el stream completo en cada proceso. Cambia la topología, por lo que
+		 * requiere resetear la aplicación del stream
+		 */
+		public Builder typeRouting(boolean typeRouting) {
+			this.typeRouting = typeRouting;
+			return this;
+		}
+
+		/*
+		 * Perfil de configuración de RocksDB de los stores del stream
+		 */
+		public Builder rocksDBProfile(RocksDBProfile rocksDBProfile) {
+			this.rocksDBProfile = rocksDBProfile;
+			return this;
+		}
+
+		/*
+		 * Memoria total para los stores de RocksDB de la JVM (0 = sin límite),
+		 * repartida entre un máximo de maxStores instancias
+		 */
+		public Builder rocksDBMemoryBudget(long memoryBudgetBytes, int maxStores) {
+			this.rocksDBMemoryBudget = memoryBudgetBytes;
+			this.rocksDBMaxStores = maxStores;
+			return this;
+		}
+
+		/*
+		 * Tipo de almacenamiento de los stores del stream
+		 */
+		public Builder storeBackend(StoreBackend storeBackend) {
+			this.storeBackend = storeBackend;
+			return this;
+		}
+
+		/*
+		 * Número máximo de entradas de cada store con StoreBackend.LRU
+		 */
+		public Builder lruMaxEntries(int lruMaxEntries) {
+			this.lruMaxEntries = lruMaxEntries;
+			return this;
+		}
+
 		public StreamConfig build() {
 
 			assert bootstrapServers != null;
@@ -97,6 +292,8 @@ public class StreamConfig {
 			assert serviceId != null;
 			assert stateStoreDir != null;
 			assert topic != null;
+			assert rocksDBProfile != null;
+			assert storeBackend != null;
 
 			if (windowsTime == null) {
 				windowsTime = DEFAULT_WINDOWS_TIME_MS;
@@ -128,4 +325,60 @@ public class StreamConfig {
 	public long getWindowsTime() {
 		return windowsTime;
 	}
+
+	public long getNearCacheMaxWeight() {
+		return nearCacheMaxWeight;
+	}
+
+	public long getKeyFilterExpectedKeys() {
+		return keyFilterExpectedKeys;
+	}
+
+	public boolean isIndexesEnabled() {
+		return indexesEnabled;
+	}
+
+	public boolean isHeaderIndexEnabled() {
+		return headerIndexEnabled;
+	}
+
+	public boolean isBackgroundStart() {
+		return backgroundStart;
+	}
+
+	public StateRestoreListener getRestoreListener() {
+		return restoreListener;
+	}
+
+	public StreamsRuntime getRuntime() {
+		return runtime;
+	}
+
+	public boolean isSnapshotFromEvents() {
+		return snapshotFromEvents;
+	}
+
+	public boolean isTypeRouting() {
+		return typeRouting;
+	}
+
+	public RocksDBProfile getRocksDBProfile() {
+		return rocksDBProfile;
+	}
+
+	public long getRocksDBMemoryBudget() {
+		return rocksDBMemoryBudget;
+	}
+
+	public int getRocksDBMaxStores() {
+		return rocksDBMaxStores;
+	}
+
+	public StoreBackend getStoreBackend() {
+		return storeBackend;
+	}
+
+	public int getLruMaxEntries() {
+		return lruMaxEntries;
+	}
 }
@@ -22,17 +22,20 @@ package es.redmic.commandslib.streaming.common;
 
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.errors.LogAndContinueExceptionHandler;
 import org.apache.kafka.streams.processor.WallclockTimestampExtractor;
 import org.apache.kafka.streams.state.RocksDBConfigSetter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.rocksdb.Options;
 
-import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
-
 public class StreamUtils {
 
 	// @formatter:off
@@ -40,6 +43,11 @@ public class StreamUtils {
 	protected final static String SCHEMA_REGISTRY_URL_PROPERTY = "schema.registry.url",
 			SCHEMA_REGISTRY_VALUE_SUBJECT_NAME_STRATEGY = "value.subject.name.strategy";
 
+	// Configuración de RocksDB (leída por CustomRocksDBConfig)
+	public final static String ROCKSDB_PROFILE_CONFIG = "redmic.rocksdb.profile",
+			ROCKSDB_MEMORY_BUDGET_CONFIG = "redmic.rocksdb.memory.budget.bytes",
+			ROCKSDB_MAX_STORES_CONFIG = "redmic.rocksdb.memory.max-stores";
+
 	// @formatter:on
 
 	public static Properties baseStreamsConfig(String bootstrapServers, String stateDir, String appId,
@@ -66,7 +74,10 @@ public class StreamUtils {
 				LogAndContinueExceptionHandler.class);
 
 		config.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass().getName());
-		config.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, SpecificAvroSerde.class);
+		config.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, EventHeadersSerde.class);
+		// Cabeceras del evento enviado sin añadir nodos a la topología
+		config.put(StreamsConfig.producerPrefix(ProducerConfig.INTERCEPTOR_CLASSES_CONFIG),
+				EventHeadersInterceptor.class.getName());
 		config.put(StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG, WallclockTimestampExtractor.class.getName());
 		config.put(SCHEMA_REGISTRY_URL_PROPERTY, schemaRegistry);
 		config.put(SCHEMA_REGISTRY_VALUE_SUBJECT_NAME_STRATEGY,
@@ -75,18 +86,66 @@ public class StreamUtils {
 		return config;
 	}
 
+	/*
+	 * Añade la configuración de RocksDB. memoryBudgetBytes es la memoria total
+	 * para los stores de la JVM (0 sin límite), que se reparte a partes iguales
+	 * entre un máximo de maxStores instancias de RocksDB (los stores con ventanas
+	 * usan una por segmento)
+	 */
+	public static Properties rocksDBConfig(Properties config, RocksDBProfile profile, long memoryBudgetBytes,
+			int maxStores) {
+
+		config.put(ROCKSDB_PROFILE_CONFIG, profile.name());
+		config.put(ROCKSDB_MEMORY_BUDGET_CONFIG, memoryBudgetBytes);
+		config.put(ROCKSDB_MAX_STORES_CONFIG, maxStores);
+		return config;
+	}
+
 	public static class CustomRocksDBConfig implements RocksDBConfigSetter {
 
+		protected static Logger logger = LogManager.getLogger();
+
+		// Instancias de RocksDB abiertas en la JVM, para avisar si se supera el
+		// máximo con el que se reparte la memoria
+		private static final Set<String> stores = ConcurrentHashMap.newKeySet();
+
 		@Override
 		public void setConfig(final String storeName, final Options options, final Map<String, Object> configs) {
-			// Workaround: We must ensure that the parallelism is set to >= 2. There seems
-			// to be a known
-			// issue with RocksDB where explicitly setting the parallelism to 1 causes
-			// issues (even though
-			// 1 seems to be RocksDB's default for this configuration).
-			int compactionParallelism = Math.max(Runtime.getRuntime().availableProcessors(), 2);
-			// Set number of compaction threads (but not flush threads).
-			options.setIncreaseParallelism(compactionParallelism);
+
+			RocksDBProfile profile = getProfile(configs.get(ROCKSDB_PROFILE_CONFIG));
+
+			long memoryBudget = getLong(configs.get(ROCKSDB_MEMORY_BUDGET_CONFIG));
+			long maxStores = Math.max(1, getLong(configs.get(ROCKSDB_MAX_STORES_CONFIG)));
+
+			long memoryLimit = memoryBudget > 0 ? memoryBudget / maxStores : 0;
+
+			if (memoryBudget > 0 && stores.add(configs.get(StreamsConfig.APPLICATION_ID_CONFIG) + "/" + storeName)
+					&& stores.size() > maxStores)
+				logger.warn("Superado el número máximo de stores de RocksDB (" + maxStores + ") con " + storeName
+						+ ". La memoria total puede superar el límite configurado");
+
+			profile.apply(options, memoryLimit);
+		}
+
+		private static RocksDBProfile getProfile(Object value) {
+
+			if (value == null)
+				return RocksDBProfile.DEFAULT;
+
+			try {
+				return RocksDBProfile.valueOf(value.toString().trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				logger.warn("Perfil de RocksDB desconocido " + value + ". Se usa " + RocksDBProfile.DEFAULT);
+				return RocksDBProfile.DEFAULT;
+			}
+		}
+
+		private static long getLong(Object value) {
+
+			if (value == null)
+				return 0;
+
+			return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString().trim());
 		}
 	}
 
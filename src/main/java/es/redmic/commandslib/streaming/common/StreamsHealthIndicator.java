@@ -0,0 +1,65 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+
+/*
+ * Estado de salud a partir de la disponibilidad de los streams dados. Mientras
+ * se restauran o rebalancean el servicio está fuera de servicio (no debe recibir
+ * tráfico) y si alguno se ha parado o ha fallado está caído
+ */
+public class StreamsHealthIndicator implements HealthIndicator {
+
+	private final List<BaseStreams> streams;
+
+	public StreamsHealthIndicator(BaseStreams... streams) {
+		this.streams = Arrays.asList(streams);
+	}
+
+	@Override
+	public Health health() {
+
+		Status status = Status.UP;
+
+		for (BaseStreams stream : streams) {
+
+			ReadinessState readiness = stream.getReadiness();
+
+			if (readiness == ReadinessState.FAILED || readiness == ReadinessState.STOPPED)
+				status = Status.DOWN;
+			else if (readiness != ReadinessState.READY && status == Status.UP)
+				status = Status.OUT_OF_SERVICE;
+		}
+
+		Health.Builder builder = Health.status(status);
+
+		for (BaseStreams stream : streams)
+			builder.withDetail(stream.getServiceId(), stream.getReadiness());
+
+		return builder.build();
+	}
+}
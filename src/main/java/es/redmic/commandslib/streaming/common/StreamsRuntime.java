@@ -0,0 +1,134 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.errors.TopologyException;
+
+import es.redmic.brokerlib.alert.AlertService;
+
+/*
+ * Ejecuta en un único KafkaStreams (mismos hilos, productores, consumidores y
+ * directorio de estado) las topologías de varios streams, que se registran al
+ * crearse con StreamConfig.Builder.runtime.
+ * 
+ * Cada stream conserva su propio ciclo de vida: su postProcessStreams se ejecuta
+ * tras arrancar el runtime y su disponibilidad se calcula por separado. Los
+ * streams no pueden consumir los mismos topics ni definir stores con el mismo
+ * nombre; en ese caso el runtime no arranca.
+ */
+public class StreamsRuntime extends BaseStreams {
+
+	private final List<BaseStreams> components = new ArrayList<>();
+
+	public StreamsRuntime(StreamConfig config, AlertService alertService) {
+		super(config, alertService);
+
+		assert runtime == null;
+	}
+
+	/*
+	 * Registra un stream. Debe hacerse antes de start()
+	 */
+	synchronized void register(BaseStreams component) {
+
+		if (streams != null)
+			throw new IllegalStateException(
+					"No se puede registrar " + component.getServiceId() + " en el runtime " + serviceId + " ya arrancado");
+
+		components.add(component);
+	}
+
+	/*
+	 * Construye la topología conjunta y arranca el KafkaStreams compartido
+	 */
+	public synchronized void start() {
+
+		if (components.isEmpty())
+			throw new IllegalStateException("El runtime " + serviceId + " no tiene streams registrados");
+
+		init();
+	}
+
+	@Override
+	protected KafkaStreams processStreams() {
+
+		KafkaStreams shared;
+
+		try {
+			shared = super.processStreams();
+		} catch (TopologyException e) {
+			throw new IllegalStateException(
+					"Los streams registrados no pueden compartir el runtime " + serviceId + ": " + e.getMessage(), e);
+		}
+
+		for (BaseStreams component : components)
+			component.attach(shared);
+
+		return shared;
+	}
+
+	@Override
+	protected void buildTopology(StreamsBuilder builder) {
+
+		for (BaseStreams component : components) {
+			try {
+				component.buildTopology(builder);
+			} catch (TopologyException e) {
+				throw new IllegalStateException("El stream " + component.getServiceId()
+						+ " no puede compartir el runtime " + serviceId + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	@Override
+	protected void postProcessStreams() {
+
+		for (int i = 0; i < components.size(); i++) {
+			try {
+				components.get(i).completeStart();
+			} catch (RuntimeException e) {
+				// Los streams que quedan por arrancar tampoco estarán disponibles
+				for (BaseStreams component : components.subList(i, components.size()))
+					component.failStart(e);
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	synchronized void updateReadiness(KafkaStreams.State state) {
+
+		super.updateReadiness(state);
+
+		for (BaseStreams component : components)
+			component.updateReadiness(state);
+	}
+
+	public List<BaseStreams> getComponents() {
+		return Collections.unmodifiableList(components);
+	}
+}
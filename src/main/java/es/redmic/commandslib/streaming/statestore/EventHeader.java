@@ -0,0 +1,78 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.joda.time.DateTime;
+
+import es.redmic.brokerlib.avro.common.Event;
+
+/*
+ * Campos de cabecera de un evento (tipo, id, versión, usuario y fecha). Basta
+ * para comprobar bloqueos y autoría sin decodificar el payload del evento
+ */
+public class EventHeader {
+
+	// @formatter:off
+
+	private final String type,
+		aggregateId,
+		userId;
+
+	// @formatter:on
+
+	private final Integer version;
+
+	private final DateTime date;
+
+	public EventHeader(String type, String aggregateId, Integer version, String userId, DateTime date) {
+		this.type = type;
+		this.aggregateId = aggregateId;
+		this.version = version;
+		this.userId = userId;
+		this.date = date;
+	}
+
+	public static EventHeader from(Event event) {
+
+		return new EventHeader(event.getType(), event.getAggregateId(), event.getVersion(), event.getUserId(),
+				event.getDate());
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getAggregateId() {
+		return aggregateId;
+	}
+
+	public Integer getVersion() {
+		return version;
+	}
+
+	public String getUserId() {
+		return userId;
+	}
+
+	public DateTime getDate() {
+		return date;
+	}
+}
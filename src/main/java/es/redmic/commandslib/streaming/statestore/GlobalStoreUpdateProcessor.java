@@ -0,0 +1,85 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import java.util.function.BiConsumer;
+
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import es.redmic.brokerlib.avro.common.Event;
+
+/*
+ * Mantiene el store global a partir de los eventos del topic (igual que
+ * globalTable: un valor null elimina la clave) y notifica cada actualización
+ * para mantener las estructuras auxiliares del StateStore (caché, filtro de
+ * claves...).
+ */
+public class GlobalStoreUpdateProcessor extends AbstractProcessor<String, Event> {
+
+	private final String storeName;
+
+	// @formatter:off
+
+	private final BiConsumer<String, Event> beforeUpdate,
+			afterUpdate;
+
+	// @formatter:on
+
+	private KeyValueStore<String, Event> store;
+
+	public GlobalStoreUpdateProcessor(String storeName, BiConsumer<String, Event> beforeUpdate,
+			BiConsumer<String, Event> afterUpdate) {
+		this.storeName = storeName;
+		this.beforeUpdate = beforeUpdate;
+		this.afterUpdate = afterUpdate;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void init(ProcessorContext context) {
+
+		super.init(context);
+		store = (KeyValueStore<String, Event>) context.getStateStore(storeName);
+	}
+
+	@Override
+	public void process(String key, Event value) {
+
+		if (key == null)
+			return;
+
+		// Antes de actualizar el store, para que la clave sea visible en cuanto exista
+		beforeUpdate.accept(key, value);
+
+		if (value == null)
+			store.delete(key);
+		else
+			store.put(key, value);
+
+		// Después de actualizar el store, para que no se vuelva a leer el valor
+		// anterior
+		afterUpdate.accept(key, value);
+	}
+}
@@ -0,0 +1,106 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import es.redmic.brokerlib.avro.common.Event;
+
+/*
+ * Cabeceras en memoria de los estados de un StateStore (id -> cabecera). Se
+ * mantiene con cada actualización del store y se carga una vez al arrancar
+ * recorriendo el store restaurado, igual que SecondaryIndex.
+ * 
+ * Las actualizaciones recibidas mientras se carga tienen prioridad sobre los
+ * valores leídos en la carga, que pueden ser anteriores.
+ * 
+ * No está acotado: guarda una cabecera por cada id del store en el heap (unos
+ * 300-500 bytes por entrada con sus strings, la fecha y la entrada del mapa,
+ * según la longitud de los ids), por lo que solo debe activarse si el número
+ * de items del store cabe holgadamente en memoria.
+ */
+public class HeaderIndex {
+
+	private final Map<String, EventHeader> headers = new ConcurrentHashMap<>();
+
+	// Ids actualizados durante la carga
+	private final Set<String> updatedWhileLoading = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean ready;
+
+	/*
+	 * Aplica una actualización del store (value null si se ha borrado)
+	 */
+	public void update(String id, Event value) {
+		apply(id, value, false);
+	}
+
+	/*
+	 * Aplica un estado leído durante la carga inicial
+	 */
+	public void load(String id, Event value) {
+		apply(id, value, true);
+	}
+
+	public void setReady() {
+
+		ready = true;
+		updatedWhileLoading.clear();
+	}
+
+	private void apply(String id, Event value, boolean fromLoad) {
+
+		EventHeader header = value != null ? EventHeader.from(value) : null;
+
+		// compute para que carga y actualización no se pisen para un mismo id
+		headers.compute(id, (k, oldHeader) -> {
+
+			if (fromLoad && updatedWhileLoading.contains(id))
+				return oldHeader;
+
+			if (!fromLoad && !ready)
+				updatedWhileLoading.add(id);
+
+			return header;
+		});
+	}
+
+	/*
+	 * Cabecera del estado con el id dado. Null si no existe o si el índice aún no
+	 * está cargado
+	 */
+	public EventHeader get(String id) {
+
+		if (!ready)
+			return null;
+		return headers.get(id);
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	public int size() {
+		return headers.size();
+	}
+}
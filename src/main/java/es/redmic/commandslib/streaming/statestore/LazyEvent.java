@@ -0,0 +1,70 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.function.Supplier;
+
+import es.redmic.brokerlib.avro.common.Event;
+
+/*
+ * Vista de un estado del store cuya cabecera está disponible sin decodificar el
+ * evento. El evento completo se lee la primera vez que se pide. No es segura
+ * para hilos; se usa dentro del procesado de un comando
+ */
+public class LazyEvent {
+
+	private final EventHeader header;
+
+	private Supplier<Event> loader;
+
+	private Event event;
+
+	public LazyEvent(Event event) {
+		this.header = EventHeader.from(event);
+		this.event = event;
+	}
+
+	public LazyEvent(EventHeader header, Supplier<Event> loader) {
+		this.header = header;
+		this.loader = loader;
+	}
+
+	public EventHeader getHeader() {
+		return header;
+	}
+
+	/*
+	 * Evento completo. Puede ser null si el item se ha eliminado del store después
+	 * de leer la cabecera
+	 */
+	public Event getEvent() {
+
+		if (loader != null) {
+			event = loader.get();
+			loader = null;
+		}
+		return event;
+	}
+
+	public boolean isLoaded() {
+		return loader == null;
+	}
+}
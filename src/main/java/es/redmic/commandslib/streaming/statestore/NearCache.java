@@ -0,0 +1,230 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/*
+ * Caché en memoria, acotada por peso, de los valores más usados de un store.
+ * Cuando se supera el peso máximo se descartan los menos usados recientemente
+ * (LRU). No caduca por tiempo: se mantiene coherente invalidando las claves que
+ * se actualizan en el store.
+ * 
+ * Los valores se comparten entre lecturas, por lo que no deben modificarse.
+ */
+public class NearCache<K, V> {
+
+	private final long maxWeight;
+
+	private final ToIntFunction<V> weigher;
+
+	// En orden de acceso, del menos al más usado recientemente
+	private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private long weight;
+
+	// Se incrementa con cada invalidación. Permite descartar los valores leídos
+	// del store mientras se actualizaban
+	private final AtomicLong generation = new AtomicLong();
+
+	// @formatter:off
+
+	private final AtomicLong hitCount = new AtomicLong(),
+			missCount = new AtomicLong(),
+			evictionCount = new AtomicLong();
+
+	// @formatter:on
+
+	public NearCache(long maxWeight, ToIntFunction<V> weigher) {
+
+		assert maxWeight > 0;
+
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	/*
+	 * Devuelve el valor de la caché o, si no está, lo obtiene con loader y lo
+	 * guarda. Los valores null no se guardan
+	 */
+	public V get(K key, Function<K, V> loader) {
+
+		Entry<V> entry;
+
+		lock.lock();
+		try {
+			entry = entries.get(key);
+		} finally {
+			lock.unlock();
+		}
+
+		if (entry != null) {
+			hitCount.incrementAndGet();
+			return entry.value;
+		}
+
+		missCount.incrementAndGet();
+
+		long loadGeneration = generation.get();
+
+		V value = loader.apply(key);
+
+		if (value == null)
+			return null;
+
+		entry = new Entry<>(value, Math.max(1, weigher.applyAsInt(value)));
+
+		put(key, entry);
+
+		// Si hubo alguna invalidación durante la carga, el valor puede estar obsoleto
+		if (generation.get() != loadGeneration)
+			remove(key, entry);
+
+		return value;
+	}
+
+	/*
+	 * Descarta la clave. Debe llamarse después de actualizar el store
+	 */
+	public void invalidate(K key) {
+
+		generation.incrementAndGet();
+		remove(key, null);
+	}
+
+	public void invalidateAll() {
+
+		generation.incrementAndGet();
+
+		lock.lock();
+		try {
+			entries.clear();
+			weight = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void put(K key, Entry<V> entry) {
+
+		lock.lock();
+		try {
+			Entry<V> previous = entries.put(key, entry);
+
+			if (previous != null)
+				weight -= previous.weight;
+
+			weight += entry.weight;
+
+			evict();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Elimina la clave si su valor es expected (cualquiera si es null)
+	 */
+	private void remove(K key, Entry<V> expected) {
+
+		lock.lock();
+		try {
+			Entry<V> current = entries.get(key);
+
+			if (current != null && (expected == null || current == expected)) {
+				entries.remove(key);
+				weight -= current.weight;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void evict() {
+
+		Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+
+		while (weight > maxWeight && eldest.hasNext()) {
+
+			weight -= eldest.next().getValue().weight;
+			eldest.remove();
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	public int size() {
+
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getWeight() {
+
+		lock.lock();
+		try {
+			return weight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	private static class Entry<V> {
+
+		private final V value;
+
+		private final int weight;
+
+		Entry(V value, int weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Filtro de Bloom escalable para comprobar si una clave no existe sin consultar
+ * el store. Cuando el filtro actual alcanza su capacidad se añade otro del doble
+ * de tamaño y con la mitad de probabilidad de falso positivo, de forma que la
+ * probabilidad total se mantiene por debajo de 2 * falsePositiveRate sin
+ * conocer de antemano el número de claves.
+ * 
+ * Es seguro para su uso concurrente. No admite borrados: una clave eliminada
+ * sigue dando positivo (se consulta el store, que es lo correcto).
+ */
+public class ScalableBloomFilter {
+
+	private static final int GROWTH_FACTOR = 2;
+
+	private static final double TIGHTENING_RATIO = 0.5;
+
+	// Copia en escritura. Solo se añaden filtros al crecer
+	private volatile Filter[] filters;
+
+	private final ReentrantLock growLock = new ReentrantLock();
+
+	private final AtomicLong count = new AtomicLong();
+
+	public ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+
+		assert initialCapacity > 0;
+		assert falsePositiveRate > 0 && falsePositiveRate < 1;
+
+		filters = new Filter[] { new Filter(initialCapacity, falsePositiveRate * (1 - TIGHTENING_RATIO)) };
+	}
+
+	public void add(String key) {
+
+		long hash1 = hash(key, 0), hash2 = hash(key, hash1);
+
+		if (mightContain(hash1, hash2))
+			return;
+
+		Filter current = filters[filters.length - 1];
+
+		if (!current.tryReserve())
+			current = grow(current);
+
+		current.add(hash1, hash2);
+		count.incrementAndGet();
+	}
+
+	/*
+	 * Devuelve false si la clave no se ha añadido nunca. Si devuelve true, la clave
+	 * probablemente se añadió
+	 */
+	public boolean mightContain(String key) {
+
+		long hash1 = hash(key, 0);
+		return mightContain(hash1, hash(key, hash1));
+	}
+
+	private boolean mightContain(long hash1, long hash2) {
+
+		for (Filter filter : filters) {
+			if (filter.mightContain(hash1, hash2))
+				return true;
+		}
+		return false;
+	}
+
+	private Filter grow(Filter full) {
+
+		growLock.lock();
+		try {
+			Filter current = filters[filters.length - 1];
+
+			// Otro hilo ya ha añadido un filtro nuevo
+			if (current != full && current.tryReserve())
+				return current;
+
+			Filter next = new Filter(full.capacity * GROWTH_FACTOR, full.falsePositiveRate * TIGHTENING_RATIO);
+			next.tryReserve();
+
+			Filter[] grown = new Filter[filters.length + 1];
+			System.arraycopy(filters, 0, grown, 0, filters.length);
+			grown[filters.length] = next;
+			filters = grown;
+
+			return next;
+		} finally {
+			growLock.unlock();
+		}
+	}
+
+	/*
+	 * Número de claves distintas añadidas (aproximado por los falsos positivos)
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	public int getFilterCount() {
+		return filters.length;
+	}
+
+	/*
+	 * Tamaño total de los filtros en bits
+	 */
+	public long getBitSize() {
+
+		long bits = 0;
+		for (Filter filter : filters)
+			bits += filter.bitSize;
+		return bits;
+	}
+
+	/*
+	 * FNV-1a de 64 bits sobre los bytes de la clave, con mezcla final (murmur3
+	 * fmix64) para repartir los bits
+	 */
+	static long hash(String key, long seed) {
+
+		long hash = 0xcbf29ce484222325L ^ seed;
+
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static class Filter {
+
+		private final long capacity;
+
+		private final double falsePositiveRate;
+
+		private final long bitSize;
+
+		private final int hashCount;
+
+		private final AtomicLongArray bits;
+
+		private final AtomicLong reserved = new AtomicLong();
+
+		Filter(long capacity, double falsePositiveRate) {
+
+			this.capacity = capacity;
+			this.falsePositiveRate = falsePositiveRate;
+
+			// m = -n ln(p) / ln(2)^2, k = m/n ln(2)
+			long words = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) / 64);
+
+			this.bits = new AtomicLongArray((int) Math.max(1, Math.min(words, Integer.MAX_VALUE)));
+			this.bitSize = bits.length() * 64L;
+			this.hashCount = (int) Math.max(1, Math.round((double) bitSize / capacity * Math.log(2)));
+		}
+
+		boolean tryReserve() {
+
+			while (true) {
+				long current = reserved.get();
+				if (current >= capacity)
+					return false;
+				if (reserved.compareAndSet(current, current + 1))
+					return true;
+			}
+		}
+
+		void add(long hash1, long hash2) {
+
+			for (int i = 0; i < hashCount; i++) {
+
+				long index = index(hash1, hash2, i);
+				int word = (int) (index >>> 6);
+				long mask = 1L << index;
+
+				long current;
+				do {
+					current = bits.get(word);
+					if ((current & mask) != 0)
+						break;
+				} while (!bits.compareAndSet(word, current, current | mask));
+			}
+		}
+
+		boolean mightContain(long hash1, long hash2) {
+
+			for (int i = 0; i < hashCount; i++) {
+
+				long index = index(hash1, hash2, i);
+				if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0)
+					return false;
+			}
+			return true;
+		}
+
+		// Doble hash (Kirsch-Mitzenmacher)
+		private long index(long hash1, long hash2, int i) {
+			return ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+		}
+	}
+}
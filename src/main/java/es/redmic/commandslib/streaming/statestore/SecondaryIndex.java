@@ -0,0 +1,141 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import es.redmic.brokerlib.avro.common.Event;
+
+/*
+ * Índice secundario en memoria de un StateStore (valor del índice -> ids). Se
+ * mantiene con cada actualización del store y se carga una vez al arrancar
+ * recorriendo el store restaurado.
+ * 
+ * Las actualizaciones recibidas mientras se carga tienen prioridad sobre los
+ * valores leídos en la carga, que pueden ser anteriores.
+ */
+public class SecondaryIndex {
+
+	private final String name;
+
+	// Obtiene el valor del índice de un estado. Null si no debe indexarse
+	private final Function<Event, String> keyExtractor;
+
+	private final Map<String, Set<String>> idsByKey = new ConcurrentHashMap<>();
+
+	private final Map<String, String> keyById = new ConcurrentHashMap<>();
+
+	// Ids actualizados durante la carga
+	private final Set<String> updatedWhileLoading = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean ready;
+
+	public SecondaryIndex(String name, Function<Event, String> keyExtractor) {
+		this.name = name;
+		this.keyExtractor = keyExtractor;
+	}
+
+	/*
+	 * Aplica una actualización del store (value null si se ha borrado)
+	 */
+	public void update(String id, Event value) {
+		apply(id, value, false);
+	}
+
+	/*
+	 * Aplica un estado leído durante la carga inicial
+	 */
+	public void load(String id, Event value) {
+		apply(id, value, true);
+	}
+
+	public void setReady() {
+
+		ready = true;
+		updatedWhileLoading.clear();
+	}
+
+	private void apply(String id, Event value, boolean fromLoad) {
+
+		String newKey = value != null ? keyExtractor.apply(value) : null;
+
+		// Todo el cambio se hace de forma atómica para el id
+		keyById.compute(id, (k, oldKey) -> {
+
+			if (fromLoad && updatedWhileLoading.contains(id))
+				return oldKey;
+
+			if (!fromLoad && !ready)
+				updatedWhileLoading.add(id);
+
+			if (oldKey != null && !oldKey.equals(newKey))
+				idsByKey.computeIfPresent(oldKey, (key, ids) -> {
+					ids.remove(id);
+					return ids.isEmpty() ? null : ids;
+				});
+
+			if (newKey != null)
+				idsByKey.compute(newKey, (key, ids) -> {
+					Set<String> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+					result.add(id);
+					return result;
+				});
+
+			return newKey;
+		});
+	}
+
+	/*
+	 * Ids indexados con el valor dado
+	 */
+	public Set<String> getIds(String key) {
+
+		Set<String> ids = idsByKey.get(key);
+
+		return ids != null ? new HashSet<>(ids) : Collections.emptySet();
+	}
+
+	/*
+	 * Comprueba si el estado corresponde al valor dado del índice
+	 */
+	public boolean matches(Event value, String key) {
+		return value != null && key.equals(keyExtractor.apply(value));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	public int size() {
+		return keyById.size();
+	}
+}
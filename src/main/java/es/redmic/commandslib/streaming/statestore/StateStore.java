@@ -20,49 +20,357 @@ package es.redmic.commandslib.streaming.statestore;
  * #L%
  */
 
-import org.apache.kafka.streams.KafkaStreams;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.Consumed;
+import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.Materialized;
 import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.QueryableStoreTypes;
 import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.apache.kafka.streams.state.Stores;
 
 import es.redmic.brokerlib.alert.AlertService;
 import es.redmic.brokerlib.avro.common.Event;
+import es.redmic.commandslib.exceptions.StoreNotReadyException;
 import es.redmic.commandslib.streaming.common.BaseStreams;
+import es.redmic.commandslib.streaming.common.StoreBackend;
 import es.redmic.commandslib.streaming.common.StreamConfig;
-import es.redmic.commandslib.streaming.common.StreamUtils;
 
 public abstract class StateStore extends BaseStreams {
 
-	protected ReadOnlyKeyValueStore<String, Event> store;
+	private static final double KEY_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+	// Mayor carácter unicode. Cota superior de las claves con un prefijo dado
+	private static final String MAX_CHAR = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+	// Null hasta que el store se puede consultar
+	protected volatile ReadOnlyKeyValueStore<String, Event> store;
+
+	// Caché de los últimos estados leídos. Null si está desactivada
+	protected NearCache<String, Event> nearCache;
+
+	// Filtro de las claves existentes para no consultar el store con claves
+	// nuevas. Null si está desactivado
+	protected ScalableBloomFilter keyFilter;
+
+	// El filtro solo se usa cuando contiene todas las claves del store
+	private volatile boolean keyFilterReady;
+
+	// Cabeceras de los estados para consultar bloqueos y autoría sin decodificar
+	// el evento. Null si está desactivado
+	protected HeaderIndex headerIndex;
+
+	// Índices secundarios por nombre. Deben añadirse antes de init()
+	private final Map<String, SecondaryIndex> indexes = new LinkedHashMap<>();
 
 	public StateStore(StreamConfig config, AlertService alertService) {
 		super(config, alertService);
-	}
 
-	@Override
-	protected KafkaStreams processStreams() {
+		if (config.getNearCacheMaxWeight() > 0)
+			nearCache = new NearCache<>(config.getNearCacheMaxWeight(), this::weigh);
+
+		if (config.getKeyFilterExpectedKeys() > 0)
+			keyFilter = new ScalableBloomFilter(config.getKeyFilterExpectedKeys(), KEY_FILTER_FALSE_POSITIVE_RATE);
+
+		if (config.isHeaderIndexEnabled())
+			headerIndex = new HeaderIndex();
 
-		StreamsBuilder builder = new StreamsBuilder();
+		if (storeBackend == StoreBackend.LRU)
+			logger.warn("El store " + topic + " usa LRU con un máximo de " + lruMaxEntries
+					+ " entradas. Los items descartados no se encontrarán");
+	}
 
-		builder.globalTable(topic, Materialized.as(topic));
+	@Override
+	protected void buildTopology(StreamsBuilder builder) {
 
-		return new KafkaStreams(builder.build(),
-				StreamUtils.baseStreamsConfig(bootstrapServers, stateStoreDir, serviceId, schemaRegistry));
+		if (nearCache == null && keyFilter == null && headerIndex == null && indexes.isEmpty()) {
+			builder.globalTable(topic, Materialized.as(storeBackend.supplier(topic, lruMaxEntries)));
+		} else {
+			// El store se actualiza mediante un procesador propio que mantiene la caché,
+			// el filtro de claves y los índices con cada evento recibido
+			builder.addGlobalStore(
+					Stores.keyValueStoreBuilder(storeBackend.supplier(topic, lruMaxEntries), Serdes.String(), null)
+							.withLoggingDisabled(),
+					topic, Consumed.with(Serdes.String(), null),
+					() -> new GlobalStoreUpdateProcessor(topic, this::beforeStoreUpdate, this::afterStoreUpdate));
+		}
 	}
 
 	@Override
 	protected void postProcessStreams() {
 
 		this.store = waitUntilStoreIsQueryable(topic, QueryableStoreTypes.<String, Event>keyValueStore(), streams);
+
+		if (keyFilter != null || headerIndex != null || !indexes.isEmpty())
+			loadFromStore();
+	}
+
+	/*
+	 * Añade al filtro de claves y a los índices los estados restaurados en el
+	 * store. La restauración no pasa por el procesador, por lo que se recorre el
+	 * store una vez en segundo plano. Los estados nuevos ya se añaden desde el
+	 * procesador
+	 */
+	private void loadFromStore() {
+
+		Thread loader = new Thread(() -> {
+
+			long start = System.currentTimeMillis(), count = 0;
+
+			try (KeyValueIterator<String, Event> it = this.store.all()) {
+				while (it.hasNext()) {
+					KeyValue<String, Event> item = it.next();
+
+					if (keyFilter != null)
+						keyFilter.add(item.key);
+
+					if (headerIndex != null)
+						headerIndex.load(item.key, item.value);
+
+					for (SecondaryIndex index : indexes.values())
+						index.load(item.key, item.value);
+					count++;
+				}
+			} catch (RuntimeException e) {
+				logger.error("Error cargando el filtro de claves y los índices de " + topic
+						+ ". Se consultará siempre el store: " + e.getLocalizedMessage());
+				return;
+			}
+
+			keyFilterReady = keyFilter != null;
+
+			if (headerIndex != null)
+				headerIndex.setReady();
+
+			for (SecondaryIndex index : indexes.values())
+				index.setReady();
+
+			logger.info("Filtro de claves e índices de " + topic + " cargados con " + count + " claves en "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}, "state-store-loader-" + topic);
+
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/*
+	 * Store consultable. Mientras se restaura se rechazan las consultas en lugar
+	 * de bloquearlas
+	 */
+	private ReadOnlyKeyValueStore<String, Event> store() {
+
+		ReadOnlyKeyValueStore<String, Event> current = this.store;
+
+		if (current == null)
+			throw new StoreNotReadyException(topic);
+		return current;
 	}
 
 	public Event get(String id) {
-		return this.store.get(id);
+
+		// Clave que nunca ha existido
+		if (keyFilterReady && !keyFilter.mightContain(id))
+			return null;
+
+		if (nearCache == null)
+			return store().get(id);
+
+		return nearCache.get(id, key -> store().get(key));
+	}
+
+	/*
+	 * Cabecera del estado con el id dado sin leer el store. Null si el índice de
+	 * cabeceras está desactivado, aún no se ha cargado o no contiene el id, en cuyo
+	 * caso debe usarse get
+	 */
+	public EventHeader getHeader(String id) {
+
+		if (headerIndex == null)
+			return null;
+		return headerIndex.get(id);
+	}
+
+	/*
+	 * Estado con el id dado cuyo evento completo solo se decodifica si se pide
+	 */
+	public LazyEvent getLazy(String id) {
+
+		EventHeader header = getHeader(id);
+
+		if (header != null)
+			return new LazyEvent(header, () -> get(id));
+
+		Event event = get(id);
+		return event != null ? new LazyEvent(event) : null;
+	}
+
+	protected void beforeStoreUpdate(String key, Event value) {
+
+		if (keyFilter != null && value != null)
+			keyFilter.add(key);
+	}
+
+	protected void afterStoreUpdate(String key, Event value) {
+
+		if (nearCache != null)
+			nearCache.invalidate(key);
+
+		if (headerIndex != null)
+			headerIndex.update(key, value);
+
+		for (SecondaryIndex index : indexes.values())
+			index.update(key, value);
+	}
+
+	/*
+	 * Añade un índice secundario con el valor que devuelve keyExtractor para cada
+	 * estado (null si no debe indexarse). Debe llamarse antes de init()
+	 */
+	protected void addIndex(String name, Function<Event, String> keyExtractor) {
+
+		assert streams == null;
+
+		indexes.put(name, new SecondaryIndex(name, keyExtractor));
+	}
+
+	/*
+	 * Estados cuyo valor en el índice dado es key, ordenados por id. Mientras el
+	 * índice se carga se recorre todo el store (también ordenado por id)
+	 */
+	public Map<String, Event> getByIndex(String indexName, String key) {
+
+		SecondaryIndex index = indexes.get(indexName);
+
+		if (index == null)
+			throw new IllegalArgumentException("Índice " + indexName + " no registrado en " + topic);
+
+		Map<String, Event> result = new LinkedHashMap<>();
+
+		if (!index.isReady()) {
+			try (KeyValueIterator<String, Event> it = getAll()) {
+				while (it.hasNext()) {
+					KeyValue<String, Event> item = it.next();
+					if (index.matches(item.value, key))
+						result.put(item.key, item.value);
+				}
+			}
+			return result;
+		}
+
+		Set<String> ids = index.getIds(key);
+
+		// El estado puede haber cambiado desde que se consultó el índice
+		for (Map.Entry<String, Event> item : getAll(ids).entrySet()) {
+			if (index.matches(item.getValue(), key))
+				result.put(item.getKey(), item.getValue());
+		}
+		return result;
+	}
+
+	public SecondaryIndex getIndex(String name) {
+		return indexes.get(name);
+	}
+
+	/*
+	 * Obtiene los estados de varios ids. Las claves se leen ordenadas para que las
+	 * lecturas consecutivas aprovechen los bloques de RocksDB ya cargados. Devuelve
+	 * solo los ids encontrados, ordenados por clave
+	 */
+	public Map<String, Event> getAll(Collection<String> ids) {
+
+		Map<String, Event> result = new LinkedHashMap<>();
+
+		TreeSet<String> keys = new TreeSet<>();
+
+		for (String id : ids) {
+			if (id != null)
+				keys.add(id);
+		}
+
+		for (String key : keys) {
+			Event state = get(key);
+			if (state != null)
+				result.put(key, state);
+		}
+		return result;
 	}
 
 	public KeyValueIterator<String, Event> getAll() {
-		return this.store.all();
+		return store().all();
+	}
+
+	/*
+	 * Iterador sobre las claves entre from y to (ambas incluidas), en orden. Debe
+	 * cerrarse después de usarlo
+	 */
+	public KeyValueIterator<String, Event> getRange(String from, String to) {
+		return store().range(from, to);
+	}
+
+	/*
+	 * Iterador sobre las claves que empiezan por prefix, en orden. Debe cerrarse
+	 * después de usarlo
+	 */
+	public KeyValueIterator<String, Event> getByPrefix(String prefix) {
+		return store().range(prefix, prefix + MAX_CHAR);
+	}
+
+	/*
+	 * Versiones como Stream de los iteradores anteriores. Deben cerrarse después
+	 * de usarlos (try-with-resources) para liberar el iterador de RocksDB
+	 */
+	public Stream<KeyValue<String, Event>> streamAll() {
+		return toStream(getAll());
+	}
+
+	public Stream<KeyValue<String, Event>> streamRange(String from, String to) {
+		return toStream(getRange(from, to));
+	}
+
+	public Stream<KeyValue<String, Event>> streamByPrefix(String prefix) {
+		return toStream(getByPrefix(prefix));
+	}
+
+	public static <K, V> Stream<KeyValue<K, V>> toStream(KeyValueIterator<K, V> iterator) {
+
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(iterator::close);
+	}
+
+	public NearCache<String, Event> getNearCache() {
+		return nearCache;
+	}
+
+	public ScalableBloomFilter getKeyFilter() {
+		return keyFilter;
+	}
+
+	public boolean isKeyFilterReady() {
+		return keyFilterReady;
+	}
+
+	public HeaderIndex getHeaderIndex() {
+		return headerIndex;
+	}
+
+	/*
+	 * Peso de un estado en la caché. Por defecto todos pesan lo mismo, por lo que
+	 * el peso máximo equivale al número máximo de entradas
+	 */
+	protected int weigh(Event event) {
+		return 1;
 	}
 }
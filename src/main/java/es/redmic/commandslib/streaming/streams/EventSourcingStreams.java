@@ -20,7 +20,13 @@ package es.redmic.commandslib.streaming.streams;
  * #L%
  */
 
-import org.apache.kafka.streams.KafkaStreams;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
@@ -29,8 +35,8 @@ import es.redmic.brokerlib.alert.AlertService;
 import es.redmic.brokerlib.avro.common.Event;
 import es.redmic.brokerlib.avro.common.EventTypes;
 import es.redmic.commandslib.streaming.common.BaseStreams;
+import es.redmic.commandslib.streaming.common.EventTypeRouter;
 import es.redmic.commandslib.streaming.common.StreamConfig;
-import es.redmic.commandslib.streaming.common.StreamUtils;
 
 public abstract class EventSourcingStreams extends BaseStreams {
 
@@ -40,22 +46,48 @@ public abstract class EventSourcingStreams extends BaseStreams {
 
 	protected String snapshotTopic;
 
+	protected boolean typeRouting;
+
+	// Stream del topic principal y sus substreams por tipo. Null si el enrutado
+	// por tipo no está activo
+	private KStream<String, Event> routedSource;
+
+	private Map<String, KStream<String, Event>> routedEvents;
+
+	// @formatter:off
+	private static final List<String> BASE_ROUTED_EVENT_TYPES = Arrays.asList(
+			EventTypes.CREATE,
+			EventTypes.CREATE_CONFIRMED,
+			EventTypes.UPDATE,
+			EventTypes.UPDATE_CONFIRMED,
+			EventTypes.UPDATE_FAILED,
+			EventTypes.DELETE_FAILED,
+			EventTypes.PREPARE_ROLLBACK);
+	// @formatter:on
+
 	public EventSourcingStreams(StreamConfig config, AlertService alertService) {
 		super(config, alertService);
 		snapshotTopic = topic + snapshotTopicSuffix;
+		typeRouting = config.isTypeRouting();
 	}
 
 	@Override
-	protected KafkaStreams processStreams() {
+	protected void buildTopology(StreamsBuilder builder) {
+
+		this.builder = builder;
 
 		createExtraStreams();
 
 		KStream<String, Event> events = builder.stream(topic);
 
+		if (typeRouting) {
+			buildRoutedTopology(events);
+			return;
+		}
+
 		KStream<String, Event> snapshotEvents = builder.stream(snapshotTopic);
 
-		KTable<String, Event> snapshotEventsTable = snapshotEvents.groupByKey()
-				.reduce((aggValue, newValue) -> newValue);
+		KTable<String, Event> snapshotEventsTable = reduceToLatest(snapshotEvents.groupByKey(), "snapshot");
 
 		// Reenvia eventos snapshot al topic correspondiente
 		forwardSnapshotEvents(events);
@@ -83,13 +115,77 @@ public abstract class EventSourcingStreams extends BaseStreams {
 
 		// Rollback
 		proccessRollbackStream(events, snapshotEventsTable);
+	}
+
+	/*
+	 * Construye la topología repartiendo los eventos del topic principal una sola
+	 * vez por tipo. Los procesos son los mismos que sin enrutado, pero al pedir los
+	 * eventos de un tipo enrutado reciben su substream en lugar de volver a
+	 * filtrar el stream completo
+	 */
+	private void buildRoutedTopology(KStream<String, Event> events) {
+
+		Set<String> routedEventTypes = new LinkedHashSet<>(BASE_ROUTED_EVENT_TYPES);
+		routedEventTypes.addAll(getRoutedEventTypes());
+
+		routedSource = events;
+		routedEvents = new EventTypeRouter(routedEventTypes).route(events);
+
+		KStream<String, Event> snapshotEvents = builder.stream(snapshotTopic);
+
+		KTable<String, Event> snapshotEventsTable = reduceToLatest(snapshotEvents.groupByKey(), "snapshot");
+
+		forwardSnapshotEvents(events, routedEvents);
+
+		processEnrichCreateSteam(events, routedEvents);
+
+		processCreateSuccessStream(events);
+
+		processEnrichUpdateSteam(events, routedEvents);
+
+		processUpdateSuccessStream(events);
+
+		processDeleteStream(events, routedEvents);
+
+		processFailedChangeStream(events, snapshotEventsTable);
+
+		processExtraStreams(events, routedEvents, snapshotEventsTable);
+
+		proccessRollbackStream(events, snapshotEventsTable);
+	}
+
+	/*
+	 * Tipos de evento que los servicios quieren recibir enrutados en las
+	 * variantes de sus procesos, además de los que usa la clase base
+	 */
+	protected Set<String> getRoutedEventTypes() {
+		return Collections.emptySet();
+	}
+
+	/*
+	 * Eventos de un tipo. Si el enrutado está activo y se piden sobre el stream
+	 * principal, devuelve el substream del tipo
+	 */
+	private KStream<String, Event> eventsOfType(KStream<String, Event> events, String eventType) {
 
-		return new KafkaStreams(builder.build(),
-				StreamUtils.baseStreamsConfig(bootstrapServers, stateStoreDir, serviceId, schemaRegistry));
+		if (events == routedSource && routedEvents.containsKey(eventType))
+			return routedEvents.get(eventType);
+
+		return events.filter((id, event) -> (eventType.equals(event.getType())));
 	}
 
 	protected abstract void forwardSnapshotEvents(KStream<String, Event> events);
 
+	/*
+	 * Variante de forwardSnapshotEvents con el enrutado por tipo activo. Recibe
+	 * los substreams de los tipos de getRoutedEventTypes; por defecto usa el
+	 * stream completo
+	 */
+	protected void forwardSnapshotEvents(KStream<String, Event> events,
+			Map<String, KStream<String, Event>> routedEvents) {
+		forwardSnapshotEvents(events);
+	}
+
 	/*
 	 * Función para crear streams extra que sean necesarios y específicos de cada
 	 * tipo
@@ -104,6 +200,14 @@ public abstract class EventSourcingStreams extends BaseStreams {
 
 	protected abstract void processEnrichCreateSteam(KStream<String, Event> events);
 
+	/*
+	 * Variante de processEnrichCreateSteam con el enrutado por tipo activo
+	 */
+	protected void processEnrichCreateSteam(KStream<String, Event> events,
+			Map<String, KStream<String, Event>> routedEvents) {
+		processEnrichCreateSteam(events);
+	}
+
 	/*
 	 * Función que a partir de los eventos de crear y confirmación de la vista,
 	 * envía evento creado
@@ -112,14 +216,16 @@ public abstract class EventSourcingStreams extends BaseStreams {
 	protected void processCreateSuccessStream(KStream<String, Event> events) {
 
 		// Stream filtrado por eventos de confirmación al crear
-		KStream<String, Event> createConfirmedEvents = events
-				.filter((id, event) -> (EventTypes.CREATE_CONFIRMED.equals(event.getType())));
+		KStream<String, Event> createConfirmedEvents = eventsOfType(events, EventTypes.CREATE_CONFIRMED);
+
+		processCreateSuccessEvents(eventsOfType(events, EventTypes.CREATE), createConfirmedEvents);
+	}
 
-		// Table filtrado por eventos de petición de crear (Siempre el último
-		// evento)
-		KTable<String, Event> createRequestEvents = events
-				.filter((id, event) -> (EventTypes.CREATE.equals(event.getType()))).groupByKey()
-				.reduce((aggValue, newValue) -> newValue);
+	protected void processCreateSuccessEvents(KStream<String, Event> createEvents,
+			KStream<String, Event> createConfirmedEvents) {
+
+		// Table por eventos de petición de crear (Siempre el último evento)
+		KTable<String, Event> createRequestEvents = reduceToLatest(createEvents.groupByKey(), "create-request");
 
 		// Join por id, mandando a kafka el evento de éxito
 		createConfirmedEvents
@@ -136,6 +242,14 @@ public abstract class EventSourcingStreams extends BaseStreams {
 
 	protected abstract void processEnrichUpdateSteam(KStream<String, Event> events);
 
+	/*
+	 * Variante de processEnrichUpdateSteam con el enrutado por tipo activo
+	 */
+	protected void processEnrichUpdateSteam(KStream<String, Event> events,
+			Map<String, KStream<String, Event>> routedEvents) {
+		processEnrichUpdateSteam(events);
+	}
+
 	/*
 	 * Función que a partir del evento de confirmación de la vista y del evento
 	 * create (petición de creación), si todo es correcto, genera evento created
@@ -152,14 +266,16 @@ public abstract class EventSourcingStreams extends BaseStreams {
 	protected void processUpdateSuccessStream(KStream<String, Event> events) {
 
 		// Stream filtrado por eventos de confirmación al modificar
-		KStream<String, Event> updateConfirmedEvents = events
-				.filter((id, event) -> (EventTypes.UPDATE_CONFIRMED.equals(event.getType())));
+		KStream<String, Event> updateConfirmedEvents = eventsOfType(events, EventTypes.UPDATE_CONFIRMED);
 
-		// Table filtrado por eventos de petición de modificar (Siempre el último
-		// evento)
-		KTable<String, Event> updateRequestEvents = events
-				.filter((id, event) -> (EventTypes.UPDATE.equals(event.getType()))).groupByKey()
-				.reduce((aggValue, newValue) -> newValue);
+		processUpdateSuccessEvents(events, eventsOfType(events, EventTypes.UPDATE), updateConfirmedEvents);
+	}
+
+	protected void processUpdateSuccessEvents(KStream<String, Event> events, KStream<String, Event> updateEvents,
+			KStream<String, Event> updateConfirmedEvents) {
+
+		// Table por eventos de petición de modificar (Siempre el último evento)
+		KTable<String, Event> updateRequestEvents = reduceToLatest(updateEvents.groupByKey(), "update-request");
 
 		// Join por id, mandando a kafka el evento de éxito
 		updateConfirmedEvents
@@ -183,6 +299,14 @@ public abstract class EventSourcingStreams extends BaseStreams {
 
 	protected abstract void processDeleteStream(KStream<String, Event> events);
 
+	/*
+	 * Variante de processDeleteStream con el enrutado por tipo activo
+	 */
+	protected void processDeleteStream(KStream<String, Event> events,
+			Map<String, KStream<String, Event>> routedEvents) {
+		processDeleteStream(events);
+	}
+
 	/*
 	 * Función que a partir del último evento correcto + el evento de edición
 	 * parcial + la confirmación de la vista, envía evento modificado.
@@ -209,8 +333,11 @@ public abstract class EventSourcingStreams extends BaseStreams {
 	protected void processUpdateFailedStream(KStream<String, Event> events, KTable<String, Event> successEventsTable) {
 
 		// Stream filtrado por eventos de fallo al modificar
-		KStream<String, Event> failedEvents = events
-				.filter((id, event) -> (EventTypes.UPDATE_FAILED.equals(event.getType())));
+		processUpdateFailedEvents(eventsOfType(events, EventTypes.UPDATE_FAILED), successEventsTable);
+	}
+
+	protected void processUpdateFailedEvents(KStream<String, Event> failedEvents,
+			KTable<String, Event> successEventsTable) {
 
 		// Join por id, mandando a kafka el evento de compensación
 		failedEvents
@@ -234,8 +361,11 @@ public abstract class EventSourcingStreams extends BaseStreams {
 	protected void processDeleteFailedStream(KStream<String, Event> events, KTable<String, Event> successEventsTable) {
 
 		// Stream filtrado por eventos de fallo al borrar
-		KStream<String, Event> failedEvents = events
-				.filter((id, event) -> (EventTypes.DELETE_FAILED.equals(event.getType())));
+		processDeleteFailedEvents(eventsOfType(events, EventTypes.DELETE_FAILED), successEventsTable);
+	}
+
+	protected void processDeleteFailedEvents(KStream<String, Event> failedEvents,
+			KTable<String, Event> successEventsTable) {
 
 		// Join por id, mandando a kafka el evento de compensación
 		failedEvents
@@ -262,11 +392,22 @@ public abstract class EventSourcingStreams extends BaseStreams {
 	protected abstract void processExtraStreams(KStream<String, Event> events,
 			KTable<String, Event> successEventsTable);
 
+	/*
+	 * Variante de processExtraStreams con el enrutado por tipo activo
+	 */
+	protected void processExtraStreams(KStream<String, Event> events,
+			Map<String, KStream<String, Event>> routedEvents, KTable<String, Event> successEventsTable) {
+		processExtraStreams(events, successEventsTable);
+	}
+
 	private void proccessRollbackStream(KStream<String, Event> events, KTable<String, Event> successEventsTable) {
 
 		// Stream filtrado por eventos pre rollback
-		KStream<String, Event> prepareRollbackEvents = events
-				.filter((id, event) -> (EventTypes.PREPARE_ROLLBACK.equals(event.getType())));
+		processRollbackEvents(eventsOfType(events, EventTypes.PREPARE_ROLLBACK), successEventsTable);
+	}
+
+	private void processRollbackEvents(KStream<String, Event> prepareRollbackEvents,
+			KTable<String, Event> successEventsTable) {
 
 		// Join por id, mandando a kafka el evento específico
 		prepareRollbackEvents.leftJoin(successEventsTable,
@@ -25,6 +25,7 @@ import org.mapstruct.factory.Mappers;
 import es.redmic.brokerlib.avro.common.Event;
 import es.redmic.commandslib.aggregate.Aggregate;
 import es.redmic.commandslib.exceptions.ItemLockedException;
+import es.redmic.commandslib.streaming.statestore.EventHeader;
 import es.redmic.commandslib.usersettings.commands.CloneSettingsCommand;
 import es.redmic.commandslib.usersettings.commands.DeleteSettingsCommand;
 import es.redmic.commandslib.usersettings.commands.SaveSettingsCommand;
@@ -69,8 +70,7 @@ public class PersistenceAggregate extends Aggregate {
 		String historicalEventUserId = null;
 
 		if (exist(id)) {
-			Event state = getStateFromHistory(id);
-			loadFromHistory(state);
+			Event state = loadStateFromHistory(id);
 			checkState(id, state.getType());
 			historicalEventUserId = state.getUserId();
 		}
@@ -94,9 +94,9 @@ public class PersistenceAggregate extends Aggregate {
 
 		String id = cmd.getPersistence().getId();
 
-		Event state = getStateFromHistory(id);
+		checkHeaderFromHistory(id, userId);
 
-		loadFromHistory(state);
+		Event state = loadStateFromHistory(id);
 
 		checkState(id, state.getType());
 
@@ -117,9 +117,9 @@ public class PersistenceAggregate extends Aggregate {
 
 		String id = cmd.getSettingsId();
 
-		Event state = getStateFromHistory(id);
+		checkHeaderFromHistory(id, userId);
 
-		loadFromHistory(state);
+		Event state = loadStateFromHistory(id);
 
 		checkState(id, state.getType());
 
@@ -147,9 +147,7 @@ public class PersistenceAggregate extends Aggregate {
 
 		String settingsId = cmd.getPersistence().getSettingsId();
 
-		Event state = getStateFromHistory(settingsId);
-
-		loadFromHistory(state);
+		Event state = loadStateFromHistory(settingsId);
 
 		checkState(settingsId, state.getType());
 
@@ -175,9 +173,7 @@ public class PersistenceAggregate extends Aggregate {
 
 		String id = cmd.getSettingsId();
 
-		Event state = getStateFromHistory(id);
-
-		loadFromHistory(state);
+		Event state = loadStateFromHistory(id);
 
 		checkState(id, state.getType());
 
@@ -204,6 +200,12 @@ public class PersistenceAggregate extends Aggregate {
 		return settingsStateStore.get(id);
 	}
 
+	@Override
+	protected EventHeader getItemHeaderFromStateStore(String id) {
+
+		return settingsStateStore.getHeader(id);
+	}
+
 	@Override
 	public void loadFromHistory(Event event) {
 		logger.debug("Cargando último estado de Category ", event.getAggregateId());
@@ -25,6 +25,7 @@ import org.mapstruct.factory.Mappers;
 import es.redmic.brokerlib.avro.common.Event;
 import es.redmic.commandslib.aggregate.Aggregate;
 import es.redmic.commandslib.exceptions.ItemLockedException;
+import es.redmic.commandslib.streaming.statestore.EventHeader;
 import es.redmic.commandslib.usersettings.commands.ClearCommand;
 import es.redmic.commandslib.usersettings.commands.DeselectCommand;
 import es.redmic.commandslib.usersettings.commands.SelectCommand;
@@ -64,8 +65,7 @@ public class SelectionAggregate extends Aggregate {
 		String historicalEventUserId = null;
 
 		if (exist(id)) {
-			Event state = getStateFromHistory(id);
-			loadFromHistory(state);
+			Event state = loadStateFromHistory(id);
 			checkState(id, state.getType());
 			historicalEventUserId = state.getUserId();
 		}
@@ -90,9 +90,9 @@ public class SelectionAggregate extends Aggregate {
 
 		String id = cmd.getSelection().getId();
 
-		Event state = getStateFromHistory(id);
+		checkHeaderFromHistory(id, userId);
 
-		loadFromHistory(state);
+		Event state = loadStateFromHistory(id);
 
 		checkState(id, state.getType());
 
@@ -113,9 +113,9 @@ public class SelectionAggregate extends Aggregate {
 
 		String id = cmd.getSelection().getId();
 
-		Event state = getStateFromHistory(id);
+		checkHeaderFromHistory(id, userId);
 
-		loadFromHistory(state);
+		Event state = loadStateFromHistory(id);
 
 		checkState(id, state.getType());
 
@@ -144,6 +144,12 @@ public class SelectionAggregate extends Aggregate {
 		return settingsStateStore.get(id);
 	}
 
+	@Override
+	protected EventHeader getItemHeaderFromStateStore(String id) {
+
+		return settingsStateStore.getHeader(id);
+	}
+
 	@Override
 	public void loadFromHistory(Event event) {
 
@@ -0,0 +1,47 @@
+package es.redmic.commandslib.usersettings.config;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import es.redmic.commandslib.streaming.common.StreamsHealthIndicator;
+import es.redmic.commandslib.usersettings.handler.SettingsCommandHandler;
+
+/*
+ * Indicador de salud de los streams de settings para las sondas del servicio.
+ * Solo se registra si el servicio incluye spring-boot-actuator
+ */
+@Configuration
+@ConditionalOnClass(name = "org.springframework.boot.actuate.health.HealthIndicator")
+@ConditionalOnProperty(name = "redmic.user-settings.enabled", havingValue = "true")
+public class SettingsHealthConfig {
+
+	@Bean
+	public HealthIndicator settingsStreamsHealthIndicator(SettingsCommandHandler settingsCommandHandler) {
+
+		return new StreamsHealthIndicator(settingsCommandHandler.getSettingsStateStore(),
+				settingsCommandHandler.getSettingsEventStreams());
+	}
+}
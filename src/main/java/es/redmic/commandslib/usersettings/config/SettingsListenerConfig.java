@@ -0,0 +1,72 @@
+package es.redmic.commandslib.usersettings.config;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Collections;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+
+import es.redmic.commandslib.config.ListenerUtils;
+import es.redmic.commandslib.usersettings.handler.SettingsCommandHandler;
+
+/*
+ * Factoría de contenedores para el listener de SettingsCommandHandler que
+ * descarta por cabecera, antes de deserializarlos, los eventos intermedios de
+ * la saga (redmic.user-settings.handler.filter.enabled) y los eventos finales
+ * de sesiones que no esperan en esta instancia
+ * (redmic.user-settings.reply.enabled).
+ */
+@Configuration
+@ConditionalOnExpression("${redmic.user-settings.enabled:false} and (${redmic.user-settings.handler.filter.enabled:false}"
+		+ " or ${redmic.user-settings.reply.enabled:false})")
+public class SettingsListenerConfig {
+
+	public static final String CONTAINER_FACTORY = "settingsFilteredListenerContainerFactory";
+
+	@Value("${redmic.user-settings.handler.filter.enabled:false}")
+	private boolean filterEnabled;
+
+	@Value("${redmic.user-settings.reply.enabled:false}")
+	private boolean replyEnabled;
+
+	@Bean(name = CONTAINER_FACTORY)
+	public ConcurrentKafkaListenerContainerFactory<String, Object> settingsFilteredListenerContainerFactory(
+			KafkaProperties kafkaProperties, ObjectProvider<SettingsCommandHandler> commandHandler) {
+
+		if (!replyEnabled)
+			return ListenerUtils.eventTypeFilteredContainerFactory(kafkaProperties.buildConsumerProperties(),
+					SettingsCommandHandler.IGNORED_EVENT_TYPES);
+
+		// El handler se obtiene al recibir el primer evento para no depender de su
+		// creación
+		return ListenerUtils.eventTypeFilteredContainerFactory(kafkaProperties.buildConsumerProperties(),
+				filterEnabled ? SettingsCommandHandler.IGNORED_EVENT_TYPES : Collections.emptySet(),
+				SettingsCommandHandler.REPLY_EVENT_TYPES,
+				sessionId -> commandHandler.getObject().getPendingConfirmations().contains(sessionId));
+	}
+}
@@ -0,0 +1,121 @@
+package es.redmic.commandslib.usersettings.controller;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import es.redmic.commandslib.usersettings.service.SettingsService;
+import es.redmic.models.es.common.dto.SuperDTO;
+import es.redmic.usersettingslib.dto.PersistenceDTO;
+import es.redmic.usersettingslib.dto.SelectionDTO;
+
+/*
+ * Versión no bloqueante de SettingsController. Se activa con la propiedad
+ * redmic.user-settings.async=true y sustituye al controlador síncrono,
+ * liberando el hilo del servlet mientras se espera la confirmación.
+ */
+@Controller
+@ConditionalOnExpression("${redmic.user-settings.enabled:false} and ${redmic.user-settings.async:false}")
+@RequestMapping(value = "${controller.mapping.SETTINGS}")
+public class SettingsAsyncController extends SettingsBaseController {
+
+	public SettingsAsyncController(SettingsService service) {
+		super(service);
+	}
+
+	@PostMapping(value = "/select", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public CompletableFuture<SuperDTO> select(@Valid @RequestBody SelectionDTO dto, BindingResult errorDto,
+			HttpServletRequest request) {
+
+		return processSelect(dto, errorDto);
+	}
+
+	@PutMapping(value = "/select/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public CompletableFuture<SuperDTO> select(@Valid @RequestBody SelectionDTO dto, BindingResult errorDto,
+			@PathVariable("id") String id, HttpServletRequest request) {
+
+		return processSelect(dto, errorDto, id);
+	}
+
+	@PutMapping(value = "/deselect/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public CompletableFuture<SuperDTO> update(@Valid @RequestBody SelectionDTO dto, BindingResult errorDto,
+			@PathVariable("id") String id, HttpServletRequest request) {
+
+		return processDeselect(dto, errorDto, id);
+	}
+
+	@PutMapping(value = "/clearselection/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public CompletableFuture<SuperDTO> clear(@Valid @RequestBody SelectionDTO dto, BindingResult errorDto,
+			@PathVariable("id") String id, HttpServletRequest request) {
+
+		return processClear(dto, errorDto, id);
+	}
+
+	@PutMapping(value = "/clone/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public CompletableFuture<SuperDTO> clone(@PathVariable("id") String id) {
+
+		return processClone(id);
+	}
+
+	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public CompletableFuture<SuperDTO> save(@Valid @RequestBody PersistenceDTO dto, BindingResult errorDto,
+			HttpServletRequest request) {
+
+		return processSave(dto, errorDto);
+	}
+
+	@PutMapping(value = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public CompletableFuture<SuperDTO> update(@Valid @RequestBody PersistenceDTO dto, BindingResult errorDto,
+			@PathVariable("id") String id, HttpServletRequest request) {
+
+		return processUpdate(dto, errorDto, id);
+	}
+
+	@DeleteMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public CompletableFuture<SuperDTO> delete(@PathVariable("id") String id) {
+
+		return processDelete(id);
+	}
+}
@@ -0,0 +1,163 @@
+package es.redmic.commandslib.usersettings.controller;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.validation.BindingResult;
+
+import es.redmic.commandslib.usersettings.service.SettingsService;
+import es.redmic.exception.data.ItemAlreadyExistException;
+import es.redmic.exception.databinding.DTONotValidException;
+import es.redmic.models.es.common.dto.BodyItemDTO;
+import es.redmic.models.es.common.dto.SuperDTO;
+import es.redmic.usersettingslib.dto.PersistenceDTO;
+import es.redmic.usersettingslib.dto.SelectionDTO;
+import es.redmic.usersettingslib.dto.SettingsDTO;
+
+/*
+ * Tratamiento común de las peticiones de settings. SettingsController espera
+ * por el resultado y SettingsAsyncController lo devuelve como
+ * CompletableFuture; solo cambia la forma de responder.
+ */
+public abstract class SettingsBaseController {
+
+	private SettingsService service;
+
+	@Value("${spring.mvc.servlet.path}")
+	String microServicePath;
+
+	@Value("${controller.mapping.SETTINGS}")
+	String controllerPath;
+
+	String serviceName;
+
+	public SettingsBaseController(SettingsService service) {
+		super();
+		this.service = service;
+	}
+
+	@PostConstruct
+	public void postConstructSettingsController() {
+		serviceName = microServicePath + controllerPath;
+	}
+
+	protected CompletableFuture<SuperDTO> processSelect(SelectionDTO dto, BindingResult errorDto) {
+
+		checkErrors(errorDto);
+
+		dto.setService(serviceName);
+
+		return service.selectAsync(dto).thenApply(result -> getCreatedBody(result));
+	}
+
+	protected CompletableFuture<SuperDTO> processSelect(SelectionDTO dto, BindingResult errorDto, String id) {
+
+		checkErrors(errorDto);
+
+		dto.setService(serviceName);
+		dto.setId(id);
+
+		return service.selectAsync(id, dto).thenApply(result -> new BodyItemDTO<SettingsDTO>(result));
+	}
+
+	protected CompletableFuture<SuperDTO> processDeselect(SelectionDTO dto, BindingResult errorDto, String id) {
+
+		checkErrors(errorDto);
+
+		dto.setService(serviceName);
+		dto.setId(id);
+
+		return service.deselectAsync(id, dto).thenApply(result -> new BodyItemDTO<SettingsDTO>(result));
+	}
+
+	protected CompletableFuture<SuperDTO> processClear(SelectionDTO dto, BindingResult errorDto, String id) {
+
+		checkErrors(errorDto);
+
+		dto.setService(serviceName);
+		dto.setId(id);
+
+		return service.clearAsync(id, dto).thenApply(result -> new BodyItemDTO<SettingsDTO>(result));
+	}
+
+	protected CompletableFuture<SuperDTO> processClone(String id) {
+
+		return service.cloneAsync(id, serviceName).thenApply(result -> new BodyItemDTO<SettingsDTO>(result));
+	}
+
+	protected CompletableFuture<SuperDTO> processSave(PersistenceDTO dto, BindingResult errorDto) {
+
+		checkErrors(errorDto);
+
+		dto.setService(serviceName);
+
+		return service.createAsync(dto).thenApply(result -> getCreatedBody(result));
+	}
+
+	protected CompletableFuture<SuperDTO> processUpdate(PersistenceDTO dto, BindingResult errorDto, String id) {
+
+		checkErrors(errorDto);
+
+		dto.setService(serviceName);
+		dto.setId(id);
+
+		return service.updateAsync(id, dto).thenApply(result -> new BodyItemDTO<SettingsDTO>(result));
+	}
+
+	protected CompletableFuture<SuperDTO> processDelete(String id) {
+
+		return service.deleteAsync(id).thenApply(result -> new SuperDTO(true));
+	}
+
+	/*
+	 * Espera por el resultado en el hilo de la petición, lanzando el error con el
+	 * que termine
+	 */
+	protected SuperDTO waitResult(CompletableFuture<SuperDTO> result) {
+
+		try {
+			return result.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	private void checkErrors(BindingResult errorDto) {
+
+		if (errorDto.hasErrors())
+			throw new DTONotValidException(errorDto);
+	}
+
+	private SuperDTO getCreatedBody(SettingsDTO result) {
+
+		if (result == null)
+			throw new ItemAlreadyExistException();
+
+		return new BodyItemDTO<SettingsDTO>(result);
+	}
+}
@@ -1,7 +1,5 @@
 package es.redmic.commandslib.usersettings.controller;
 
-import javax.annotation.PostConstruct;
-
 /*-
  * #%L
  * commands-lib
@@ -25,8 +23,7 @@ import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.BindingResult;
@@ -39,54 +36,24 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import es.redmic.commandslib.usersettings.service.SettingsService;
-import es.redmic.exception.data.ItemAlreadyExistException;
-import es.redmic.exception.databinding.DTONotValidException;
-import es.redmic.models.es.common.dto.BodyItemDTO;
 import es.redmic.models.es.common.dto.SuperDTO;
 import es.redmic.usersettingslib.dto.PersistenceDTO;
 import es.redmic.usersettingslib.dto.SelectionDTO;
-import es.redmic.usersettingslib.dto.SettingsDTO;
 
 @Controller
-@ConditionalOnProperty(name = "redmic.user-settings.enabled", havingValue = "true")
+@ConditionalOnExpression("${redmic.user-settings.enabled:false} and !${redmic.user-settings.async:false}")
 @RequestMapping(value = "${controller.mapping.SETTINGS}")
-public class SettingsController {
-
-	private SettingsService service;
-
-	@Value("${spring.mvc.servlet.path}")
-	String microServicePath;
-
-	@Value("${controller.mapping.SETTINGS}")
-	String controllerPath;
-
-	String serviceName;
+public class SettingsController extends SettingsBaseController {
 
 	public SettingsController(SettingsService service) {
-		super();
-		this.service = service;
-	}
-
-	@PostConstruct
-	public void postConstructSettingsController() {
-		serviceName = microServicePath + controllerPath;
+		super(service);
 	}
 
 	@PostMapping(value = "/select", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseBody
 	public SuperDTO select(@Valid @RequestBody SelectionDTO dto, BindingResult errorDto, HttpServletRequest request) {
 
-		if (errorDto.hasErrors())
-			throw new DTONotValidException(errorDto);
-
-		dto.setService(serviceName);
-
-		SettingsDTO result = service.select(dto);
-
-		if (result == null)
-			throw new ItemAlreadyExistException();
-
-		return new BodyItemDTO<SettingsDTO>(result);
+		return waitResult(processSelect(dto, errorDto));
 	}
 
 	@PutMapping(value = "/select/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -94,13 +61,7 @@ public class SettingsController {
 	public SuperDTO select(@Valid @RequestBody SelectionDTO dto, BindingResult errorDto, @PathVariable("id") String id,
 			HttpServletRequest request) {
 
-		if (errorDto.hasErrors())
-			throw new DTONotValidException(errorDto);
-
-		dto.setService(serviceName);
-		dto.setId(id);
-
-		return new BodyItemDTO<SettingsDTO>(service.select(id, dto));
+		return waitResult(processSelect(dto, errorDto, id));
 	}
 
 	@PutMapping(value = "/deselect/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -108,13 +69,7 @@ public class SettingsController {
 	public SuperDTO update(@Valid @RequestBody SelectionDTO dto, BindingResult errorDto, @PathVariable("id") String id,
 			HttpServletRequest request) {
 
-		if (errorDto.hasErrors())
-			throw new DTONotValidException(errorDto);
-
-		dto.setService(serviceName);
-		dto.setId(id);
-
-		return new BodyItemDTO<SettingsDTO>(service.deselect(id, dto));
+		return waitResult(processDeselect(dto, errorDto, id));
 	}
 
 	@PutMapping(value = "/clearselection/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -122,37 +77,21 @@ public class SettingsController {
 	public SuperDTO clear(@Valid @RequestBody SelectionDTO dto, BindingResult errorDto, @PathVariable("id") String id,
 			HttpServletRequest request) {
 
-		if (errorDto.hasErrors())
-			throw new DTONotValidException(errorDto);
-
-		dto.setService(serviceName);
-		dto.setId(id);
-
-		return new BodyItemDTO<SettingsDTO>(service.clear(id, dto));
+		return waitResult(processClear(dto, errorDto, id));
 	}
 
 	@PutMapping(value = "/clone/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseBody
 	public SuperDTO clone(@PathVariable("id") String id) {
 
-		return new BodyItemDTO<SettingsDTO>(service.clone(id, serviceName));
+		return waitResult(processClone(id));
 	}
 
 	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseBody
 	public SuperDTO save(@Valid @RequestBody PersistenceDTO dto, BindingResult errorDto, HttpServletRequest request) {
 
-		if (errorDto.hasErrors())
-			throw new DTONotValidException(errorDto);
-
-		dto.setService(serviceName);
-
-		SettingsDTO result = service.create(dto);
-
-		if (result == null)
-			throw new ItemAlreadyExistException();
-
-		return new BodyItemDTO<SettingsDTO>(result);
+		return waitResult(processSave(dto, errorDto));
 	}
 
 	@PutMapping(value = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -160,19 +99,13 @@ public class SettingsController {
 	public SuperDTO update(@Valid @RequestBody PersistenceDTO dto, BindingResult errorDto,
 			@PathVariable("id") String id, HttpServletRequest request) {
 
-		if (errorDto.hasErrors())
-			throw new DTONotValidException(errorDto);
-
-		dto.setService(serviceName);
-		dto.setId(id);
-
-		return new BodyItemDTO<SettingsDTO>(service.update(id, dto));
+		return waitResult(processUpdate(dto, errorDto, id));
 	}
 
 	@DeleteMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseBody
 	public SuperDTO delete(@PathVariable("id") String id) {
-		service.delete(id);
-		return new SuperDTO(true);
+
+		return waitResult(processDelete(id));
 	}
 }
@@ -22,16 +22,33 @@ import javax.annotation.PostConstruct;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.messaging.handler.annotation.Headers;
 import org.springframework.stereotype.Component;
 
 import es.redmic.brokerlib.alert.AlertService;
+import es.redmic.commandslib.commands.Command;
 import es.redmic.commandslib.commands.CommandHandler;
+import es.redmic.commandslib.commands.CommandResult;
 import es.redmic.commandslib.exceptions.ItemLockedException;
+import es.redmic.commandslib.streaming.common.BaseStreams;
+import es.redmic.commandslib.streaming.common.RestoreProgressListener;
+import es.redmic.commandslib.streaming.common.RocksDBProfile;
+import es.redmic.commandslib.streaming.common.StoreBackend;
 import es.redmic.commandslib.streaming.common.StreamConfig;
 import es.redmic.commandslib.streaming.common.StreamConfig.Builder;
 import es.redmic.commandslib.usersettings.aggregate.PersistenceAggregate;
@@ -44,6 +61,7 @@ import es.redmic.commandslib.usersettings.commands.SaveSettingsCommand;
 import es.redmic.commandslib.usersettings.commands.SelectCommand;
 import es.redmic.commandslib.usersettings.commands.UpdateSettingsAccessedDateCommand;
 import es.redmic.commandslib.usersettings.commands.UpdateSettingsCommand;
+import es.redmic.commandslib.usersettings.config.SettingsListenerConfig;
 import es.redmic.commandslib.usersettings.statestore.SettingsStateStore;
 import es.redmic.commandslib.usersettings.streams.SettingsEventStreams;
 import es.redmic.exception.factory.ExceptionFactory;
@@ -73,9 +91,43 @@ import es.redmic.usersettingslib.events.update.UpdateSettingsAccessedDateEvent;
 
 @Component
 @ConditionalOnProperty(name = "redmic.user-settings.enabled", havingValue = "true")
-@KafkaListener(topics = "${broker.topic.settings}")
+@KafkaListener(topics = "${broker.topic.settings}",
+		containerFactory = "#{'${redmic.user-settings.handler.filter.enabled:false}' == 'true'"
+				+ " or '${redmic.user-settings.reply.enabled:false}' == 'true' ? '"
+				+ SettingsListenerConfig.CONTAINER_FACTORY + "' : ''}")
 public class SettingsCommandHandler extends CommandHandler {
 
+	// Eventos intermedios de la saga que el handler no procesa. Con
+	// redmic.user-settings.handler.filter.enabled se descartan por cabecera sin
+	// deserializarlos
+	// @formatter:off
+
+	public static final Set<String> IGNORED_EVENT_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			SettingsEventTypes.PARTIAL_SELECT, SettingsEventTypes.SELECT,
+			SettingsEventTypes.SELECT_CONFIRMED, SettingsEventTypes.SELECT_FAILED,
+			SettingsEventTypes.PARTIAL_DESELECT, SettingsEventTypes.DESELECT,
+			SettingsEventTypes.DESELECT_CONFIRMED, SettingsEventTypes.DESELECT_FAILED,
+			SettingsEventTypes.PARTIAL_CLEAR_SELECTION, SettingsEventTypes.CLEAR_SELECTION,
+			SettingsEventTypes.CLEAR_SELECTION_CONFIRMED, SettingsEventTypes.CLEAR_SELECTION_FAILED,
+			SettingsEventTypes.PARTIAL_SAVE, SettingsEventTypes.SAVE,
+			SettingsEventTypes.SAVE_CONFIRMED, SettingsEventTypes.SAVE_FAILED,
+			SettingsEventTypes.CLONE, SettingsEventTypes.UPDATE_ACCESSED_DATE,
+			SettingsEventTypes.CHECK_DELETE, SettingsEventTypes.CHECK_DELETE_FAILED,
+			SettingsEventTypes.DELETE, SettingsEventTypes.DELETE_FAILED)));
+
+	// Eventos finales de la saga que resuelven las peticiones. Con
+	// redmic.user-settings.reply.enabled se descartan por cabecera, sin
+	// deserializarlos, los de sesiones que no esperan en esta instancia
+
+	public static final Set<String> REPLY_EVENT_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			SettingsEventTypes.SELECTED, SettingsEventTypes.SELECT_CANCELLED,
+			SettingsEventTypes.DESELECTED, SettingsEventTypes.DESELECT_CANCELLED,
+			SettingsEventTypes.SELECTION_CLEARED, SettingsEventTypes.CLEAR_SELECTION_CANCELLED,
+			SettingsEventTypes.SAVED, SettingsEventTypes.SAVE_CANCELLED,
+			SettingsEventTypes.DELETED, SettingsEventTypes.DELETE_CANCELLED)));
+
+	// @formatter:on
+
 	@Value("${spring.kafka.properties.schema.registry.url}")
 	protected String schemaRegistry;
 
@@ -97,8 +149,65 @@ public class SettingsCommandHandler extends CommandHandler {
 	@Value("${stream.windows.time.ms}")
 	private Long streamWindowsTime;
 
+	// Número máximo de settings en la caché en memoria del state store (0 =
+	// desactivada)
+	@Value("${broker.state.store.settings.near-cache.max-entries:0}")
+	private long stateStoreNearCacheMaxEntries;
+
+	// Número esperado de settings en el filtro de claves del state store (0 =
+	// desactivado)
+	@Value("${broker.state.store.settings.key-filter.expected-keys:0}")
+	private long stateStoreKeyFilterExpectedKeys;
+
+	// Índices secundarios del state store por usuario y por servicio
+	@Value("${broker.state.store.settings.indexes.enabled:false}")
+	private boolean stateStoreIndexesEnabled;
+
+	// Cabeceras de los estados en memoria para comprobar bloqueos y autoría sin
+	// decodificar el evento completo
+	@Value("${broker.state.store.settings.header-index.enabled:false}")
+	private boolean stateStoreHeaderIndexEnabled;
+
+	// Perfiles de RocksDB (DEFAULT, POINT_LOOKUP, WRITE_HEAVY, MEMORY_CAPPED)
+	@Value("${broker.state.store.settings.rocksdb.profile:DEFAULT}")
+	private RocksDBProfile stateStoreRocksDBProfile;
+
+	@Value("${broker.stream.events.settings.rocksdb.profile:DEFAULT}")
+	private RocksDBProfile streamRocksDBProfile;
+
+	// Memoria total de RocksDB en la JVM (0 = sin límite), repartida entre un
+	// máximo de max-stores instancias
+	@Value("${broker.rocksdb.memory.budget-mb:0}")
+	private long rocksDBMemoryBudgetMB;
+
+	@Value("${broker.rocksdb.memory.max-stores:16}")
+	private int rocksDBMaxStores;
+
+	// Almacenamiento de los stores (ROCKSDB, IN_MEMORY, LRU)
+	@Value("${broker.state.store.settings.backend:ROCKSDB}")
+	private StoreBackend stateStoreBackend;
+
+	@Value("${broker.stream.events.settings.backend:ROCKSDB}")
+	private StoreBackend streamBackend;
+
+	@Value("${broker.stream.events.settings.lru.max-entries:10000}")
+	private int streamLruMaxEntries;
+
+	// La tabla de snapshots del stream se construye sin consumir el topic snapshot.
+	// Cambiarlo en un despliegue existente requiere resetear la aplicación del
+	// stream (ver StreamConfig.Builder.snapshotFromEvents)
+	@Value("${broker.stream.events.settings.snapshot-from-events:false}")
+	private boolean streamSnapshotFromEvents;
+
+	// Arranca los streams en segundo plano sin esperar a restaurar los stores. Los
+	// comandos recibidos mientras tanto se rechazan con StoreNotReadyException
+	@Value("${broker.stream.settings.background-start:false}")
+	private boolean backgroundStart;
+
 	private SettingsStateStore settingsStateStore;
 
+	private SettingsEventStreams settingsEventStreams;
+
 	@Autowired
 	UserService userService;
 
@@ -112,30 +221,85 @@ public class SettingsCommandHandler extends CommandHandler {
 	@PostConstruct
 	private void setUp() {
 
+		// Un único listener para informar del progreso de la restauración de todos
+		// los stores
+		RestoreProgressListener restoreListener = new RestoreProgressListener();
+		metrics.bindRestoreGauges(restoreListener);
+
 		// @formatter:off
 		
 		Builder config = StreamConfig.Builder
 				.bootstrapServers(bootstrapServers)
 				.schemaRegistry(schemaRegistry)
 				.stateStoreDir(stateStoreSettingsDir)
-				.topic(settingsTopic);
+				.topic(settingsTopic)
+				.rocksDBMemoryBudget(rocksDBMemoryBudgetMB * 1024 * 1024, rocksDBMaxStores)
+				.backgroundStart(backgroundStart)
+				.restoreListener(restoreListener);
 		
-		settingsStateStore = new SettingsStateStore(
-				config
-					.serviceId(settingsIdConfig)
-					.build(), alertService);
-
-		new SettingsEventStreams(
-				config
-					.serviceId(settingsEventsStreamId)
-					.windowsTime(streamWindowsTime)
-					.build(), alertService);
+		StreamConfig stateStoreConfig = config
+				.serviceId(settingsIdConfig)
+				.nearCacheMaxWeight(stateStoreNearCacheMaxEntries)
+				.keyFilterExpectedKeys(stateStoreKeyFilterExpectedKeys)
+				.indexesEnabled(stateStoreIndexesEnabled)
+				.headerIndexEnabled(stateStoreHeaderIndexEnabled)
+				.rocksDBProfile(stateStoreRocksDBProfile)
+				.storeBackend(stateStoreBackend)
+				.build();
+
+		StreamConfig eventStreamsConfig = config
+				.serviceId(settingsEventsStreamId)
+				.windowsTime(streamWindowsTime)
+				.nearCacheMaxWeight(0)
+				.keyFilterExpectedKeys(0)
+				.indexesEnabled(false)
+				.headerIndexEnabled(false)
+				.rocksDBProfile(streamRocksDBProfile)
+				.storeBackend(streamBackend)
+				.lruMaxEntries(streamLruMaxEntries)
+				.snapshotFromEvents(streamSnapshotFromEvents)
+				.build();
 		
 		// @formatter:on
+
+		// Ambos streams restauran sus stores en paralelo
+		CompletableFuture<SettingsStateStore> stateStore = BaseStreams
+				.createAsync(() -> new SettingsStateStore(stateStoreConfig, alertService), settingsIdConfig);
+
+		CompletableFuture<SettingsEventStreams> eventStreams = BaseStreams
+				.createAsync(() -> new SettingsEventStreams(eventStreamsConfig, alertService), settingsEventsStreamId);
+
+		settingsStateStore = BaseStreams.join(stateStore);
+		settingsEventStreams = BaseStreams.join(eventStreams);
+
+		metrics.bindNearCacheGauges(settingsTopic, settingsStateStore.getNearCache());
+	}
+
+	@Override
+	protected String getIdempotencyUserId() {
+		return userService.getUserId();
+	}
+
+	public SettingsStateStore getSettingsStateStore() {
+		return settingsStateStore;
+	}
+
+	public SettingsEventStreams getSettingsEventStreams() {
+		return settingsEventStreams;
 	}
 
 	public SettingsDTO select(SelectCommand cmd) {
 
+		return waitResult(selectAsync(cmd));
+	}
+
+	public CompletableFuture<SettingsDTO> selectAsync(SelectCommand cmd) {
+
+		return executeIdempotent(cmd, () -> processSelect(cmd));
+	}
+
+	private CompletableFuture<SettingsDTO> processSelect(SelectCommand cmd) {
+
 		SelectionAggregate agg = new SelectionAggregate(settingsStateStore, userService);
 
 		PartialSelectEvent event;
@@ -150,16 +314,26 @@ public class SettingsCommandHandler extends CommandHandler {
 
 		// Si no se genera evento significa que no se debe aplicar
 		if (event == null)
-			return null;
+			return CompletableFuture.completedFuture(null);
 
 		// Se aplica el evento
 		agg.apply(event);
 
-		return sendEventAndWaitResult(agg, event, settingsTopic);
+		return sendEventAndGetFuture(agg, event, settingsTopic);
 	}
 
 	public SettingsDTO deselect(DeselectCommand cmd) {
 
+		return waitResult(deselectAsync(cmd));
+	}
+
+	public CompletableFuture<SettingsDTO> deselectAsync(DeselectCommand cmd) {
+
+		return executeIdempotent(cmd, () -> processDeselect(cmd));
+	}
+
+	private CompletableFuture<SettingsDTO> processDeselect(DeselectCommand cmd) {
+
 		SelectionAggregate agg = new SelectionAggregate(settingsStateStore, userService);
 
 		PartialDeselectEvent event;
@@ -174,16 +348,26 @@ public class SettingsCommandHandler extends CommandHandler {
 
 		// Si no se genera evento significa que no se debe aplicar
 		if (event == null)
-			return null;
+			return CompletableFuture.completedFuture(null);
 
 		// Se aplica el evento
 		agg.apply(event);
 
-		return sendEventAndWaitResult(agg, event, settingsTopic);
+		return sendEventAndGetFuture(agg, event, settingsTopic);
 	}
 
 	public SettingsDTO clear(ClearCommand cmd) {
 
+		return waitResult(clearAsync(cmd));
+	}
+
+	public CompletableFuture<SettingsDTO> clearAsync(ClearCommand cmd) {
+
+		return executeIdempotent(cmd, () -> processClear(cmd));
+	}
+
+	private CompletableFuture<SettingsDTO> processClear(ClearCommand cmd) {
+
 		SelectionAggregate agg = new SelectionAggregate(settingsStateStore, userService);
 
 		PartialClearSelectionEvent event;
@@ -198,16 +382,26 @@ public class SettingsCommandHandler extends CommandHandler {
 
 		// Si no se genera evento significa que no se debe aplicar
 		if (event == null)
-			return null;
+			return CompletableFuture.completedFuture(null);
 
 		// Se aplica el evento
 		agg.apply(event);
 
-		return sendEventAndWaitResult(agg, event, settingsTopic);
+		return sendEventAndGetFuture(agg, event, settingsTopic);
 	}
 
 	public SettingsDTO save(SaveSettingsCommand cmd) {
 
+		return waitResult(saveAsync(cmd));
+	}
+
+	public CompletableFuture<SettingsDTO> saveAsync(SaveSettingsCommand cmd) {
+
+		return executeIdempotent(cmd, () -> processSave(cmd));
+	}
+
+	private CompletableFuture<SettingsDTO> processSave(SaveSettingsCommand cmd) {
+
 		PersistenceAggregate agg = new PersistenceAggregate(settingsStateStore, userService);
 
 		PartialSaveSettingsEvent event;
@@ -222,16 +416,26 @@ public class SettingsCommandHandler extends CommandHandler {
 
 		// Si no se genera evento significa que no se debe aplicar
 		if (event == null)
-			return null;
+			return CompletableFuture.completedFuture(null);
 
 		// Se aplica el evento
 		agg.apply(event);
 
-		return sendEventAndWaitResult(agg, event, settingsTopic);
+		return sendEventAndGetFuture(agg, event, settingsTopic);
 	}
 
 	public SettingsDTO update(UpdateSettingsCommand cmd) {
 
+		return waitResult(updateAsync(cmd));
+	}
+
+	public CompletableFuture<SettingsDTO> updateAsync(UpdateSettingsCommand cmd) {
+
+		return executeIdempotent(cmd, () -> processUpdate(cmd));
+	}
+
+	private CompletableFuture<SettingsDTO> processUpdate(UpdateSettingsCommand cmd) {
+
 		PersistenceAggregate agg = new PersistenceAggregate(settingsStateStore, userService);
 
 		PartialSaveSettingsEvent event;
@@ -246,16 +450,26 @@ public class SettingsCommandHandler extends CommandHandler {
 
 		// Si no se genera evento significa que no se debe aplicar
 		if (event == null)
-			return null;
+			return CompletableFuture.completedFuture(null);
 
 		// Se aplica el evento
 		agg.apply(event);
 
-		return sendEventAndWaitResult(agg, event, settingsTopic);
+		return sendEventAndGetFuture(agg, event, settingsTopic);
 	}
 
 	public SettingsDTO delete(DeleteSettingsCommand cmd) {
 
+		return waitResult(deleteAsync(cmd));
+	}
+
+	public CompletableFuture<SettingsDTO> deleteAsync(DeleteSettingsCommand cmd) {
+
+		return executeIdempotent(cmd, () -> processDelete(cmd));
+	}
+
+	private CompletableFuture<SettingsDTO> processDelete(DeleteSettingsCommand cmd) {
+
 		PersistenceAggregate agg = new PersistenceAggregate(settingsStateStore, userService);
 
 		CheckDeleteSettingsEvent event;
@@ -270,16 +484,26 @@ public class SettingsCommandHandler extends CommandHandler {
 
 		// Si no se genera evento significa que no se debe aplicar
 		if (event == null)
-			return null;
+			return CompletableFuture.completedFuture(null);
 
 		// Se aplica el evento
 		agg.apply(event);
 
-		return sendEventAndWaitResult(agg, event, settingsTopic);
+		return sendEventAndGetFuture(agg, event, settingsTopic);
 	}
 
 	public SettingsDTO clone(CloneSettingsCommand cmd) {
 
+		return waitResult(cloneAsync(cmd));
+	}
+
+	public CompletableFuture<SettingsDTO> cloneAsync(CloneSettingsCommand cmd) {
+
+		return executeIdempotent(cmd, () -> processClone(cmd));
+	}
+
+	private CompletableFuture<SettingsDTO> processClone(CloneSettingsCommand cmd) {
+
 		PersistenceAggregate agg = new PersistenceAggregate(settingsStateStore, userService);
 
 		CloneSettingsEvent event;
@@ -294,14 +518,56 @@ public class SettingsCommandHandler extends CommandHandler {
 
 		// Si no se genera evento significa que no se debe aplicar
 		if (event == null)
-			return null;
+			return CompletableFuture.completedFuture(null);
 
 		// Se aplica el evento
 		agg.apply(event);
 
 		updateSettingsAccessedDate(new UpdateSettingsAccessedDateCommand(cmd.getPersistence().getSettingsId()));
 
-		return sendEventAndWaitResult(agg, event, settingsTopic);
+		return sendEventAndGetFuture(agg, event, settingsTopic);
+	}
+
+	// Batch
+
+	public List<CommandResult<SettingsDTO>> batch(List<Command> commands) {
+
+		return batchAsync(commands).join();
+	}
+
+	/*
+	 * Procesa todos los comandos de forma no bloqueante y espera por todas las
+	 * confirmaciones a la vez. Devuelve el resultado de cada
+	 * comando en el mismo orden.
+	 */
+	public CompletableFuture<List<CommandResult<SettingsDTO>>> batchAsync(List<Command> commands) {
+
+		List<Supplier<CompletableFuture<SettingsDTO>>> batch = new ArrayList<>(commands.size());
+
+		for (Command cmd : commands)
+			batch.add(() -> commandAsync(cmd));
+
+		return executeBatchAsync(batch);
+	}
+
+	private CompletableFuture<SettingsDTO> commandAsync(Command cmd) {
+
+		if (cmd instanceof SelectCommand)
+			return selectAsync((SelectCommand) cmd);
+		if (cmd instanceof DeselectCommand)
+			return deselectAsync((DeselectCommand) cmd);
+		if (cmd instanceof ClearCommand)
+			return clearAsync((ClearCommand) cmd);
+		if (cmd instanceof SaveSettingsCommand)
+			return saveAsync((SaveSettingsCommand) cmd);
+		if (cmd instanceof UpdateSettingsCommand)
+			return updateAsync((UpdateSettingsCommand) cmd);
+		if (cmd instanceof DeleteSettingsCommand)
+			return deleteAsync((DeleteSettingsCommand) cmd);
+		if (cmd instanceof CloneSettingsCommand)
+			return cloneAsync((CloneSettingsCommand) cmd);
+
+		throw new IllegalArgumentException("Comando no soportado en lote: " + cmd.getClass().getName());
 	}
 
 	public void updateSettingsAccessedDate(UpdateSettingsAccessedDateCommand cmd) {
@@ -328,66 +594,66 @@ public class SettingsCommandHandler extends CommandHandler {
 	// Select
 
 	@KafkaHandler
-	private void listen(SelectedEvent event) {
+	private void listen(SelectedEvent event, @Headers Map<String, Object> headers) {
 
 		// El evento selected se envía desde el stream
-		resolveCommand(event.getSessionId(), event.getSettings());
+		resolveCommand(event.getSessionId(), event.getSettings(), headers);
 	}
 
 	@KafkaHandler
-	private void listen(SelectCancelledEvent event) {
+	private void listen(SelectCancelledEvent event, @Headers Map<String, Object> headers) {
 
 		resolveCommand(event.getSessionId(),
-				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()));
+				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()), headers);
 	}
 
 	// Deselect
 
 	@KafkaHandler
-	private void listen(DeselectedEvent event) {
+	private void listen(DeselectedEvent event, @Headers Map<String, Object> headers) {
 
 		// El evento deselected se envía desde el stream
-		resolveCommand(event.getSessionId(), event.getSettings());
+		resolveCommand(event.getSessionId(), event.getSettings(), headers);
 	}
 
 	@KafkaHandler
-	private void listen(DeselectCancelledEvent event) {
+	private void listen(DeselectCancelledEvent event, @Headers Map<String, Object> headers) {
 
 		resolveCommand(event.getSessionId(),
-				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()));
+				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()), headers);
 	}
 
 	// Clear
 
 	@KafkaHandler
-	private void listen(SelectionClearedEvent event) {
+	private void listen(SelectionClearedEvent event, @Headers Map<String, Object> headers) {
 
 		// El evento selectionCleared se envía desde el stream
 
-		resolveCommand(event.getSessionId(), event.getSettings());
+		resolveCommand(event.getSessionId(), event.getSettings(), headers);
 	}
 
 	@KafkaHandler
-	private void listen(ClearSelectionCancelledEvent event) {
+	private void listen(ClearSelectionCancelledEvent event, @Headers Map<String, Object> headers) {
 
 		resolveCommand(event.getSessionId(),
-				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()));
+				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()), headers);
 	}
 
 	// Save
 
 	@KafkaHandler
-	private void listen(SettingsSavedEvent event) {
+	private void listen(SettingsSavedEvent event, @Headers Map<String, Object> headers) {
 
 		// El evento settingsSaved se envía desde el stream
-		resolveCommand(event.getSessionId(), event.getSettings());
+		resolveCommand(event.getSessionId(), event.getSettings(), headers);
 	}
 
 	@KafkaHandler
-	private void listen(SaveSettingsCancelledEvent event) {
+	private void listen(SaveSettingsCancelledEvent event, @Headers Map<String, Object> headers) {
 
 		resolveCommand(event.getSessionId(),
-				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()));
+				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()), headers);
 	}
 
 	// Delete
@@ -405,16 +671,16 @@ public class SettingsCommandHandler extends CommandHandler {
 	}
 
 	@KafkaHandler
-	private void listen(SettingsDeletedEvent event) {
+	private void listen(SettingsDeletedEvent event, @Headers Map<String, Object> headers) {
 
 		// El evento settingsDeleted se envía desde el stream
-		resolveCommand(event.getSessionId());
+		resolveCommand(event.getSessionId(), null, headers);
 	}
 
 	@KafkaHandler
-	private void listen(DeleteSettingsCancelledEvent event) {
+	private void listen(DeleteSettingsCancelledEvent event, @Headers Map<String, Object> headers) {
 
 		resolveCommand(event.getSessionId(),
-				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()));
+				ExceptionFactory.getException(event.getExceptionType(), event.getArguments()), headers);
 	}
 }
@@ -20,9 +20,24 @@ package es.redmic.commandslib.usersettings.service;
  * #L%
  */
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import es.redmic.commandslib.commands.Command;
+import es.redmic.commandslib.commands.CommandResult;
 import es.redmic.commandslib.usersettings.commands.ClearCommand;
 import es.redmic.commandslib.usersettings.commands.CloneSettingsCommand;
 import es.redmic.commandslib.usersettings.commands.DeleteSettingsCommand;
@@ -39,45 +54,147 @@ import es.redmic.usersettingslib.dto.SettingsDTO;
 @ConditionalOnProperty(name = "redmic.user-settings.enabled", havingValue = "true")
 public class SettingsService {
 
+	// Cabecera con la que el cliente identifica los reintentos de una petición
+	public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
 	SettingsCommandHandler commandHandler;
 
-	public SettingsService(SettingsCommandHandler commandHandler) {
+	ObjectMapper objectMapper;
+
+	public SettingsService(SettingsCommandHandler commandHandler, ObjectMapper objectMapper) {
 		this.commandHandler = commandHandler;
+		this.objectMapper = objectMapper;
 	}
 
 	public SettingsDTO select(SelectionDTO selection) {
-		return commandHandler.select(new SelectCommand(selection));
+		return commandHandler.select(withIdempotencyKey(null, selection, () -> new SelectCommand(selection)));
 	}
 
 	public SettingsDTO select(String id, SelectionDTO selection) {
 		selection.setId(id);
-		return commandHandler.select(new SelectCommand(selection));
+		return commandHandler.select(withIdempotencyKey(id, selection, () -> new SelectCommand(selection)));
 	}
 
 	public SettingsDTO deselect(String id, SelectionDTO selection) {
 		selection.setId(id);
-		return commandHandler.deselect(new DeselectCommand(selection));
+		return commandHandler.deselect(withIdempotencyKey(id, selection, () -> new DeselectCommand(selection)));
 	}
 
 	public SettingsDTO clear(String id, SelectionDTO selection) {
 		selection.setId(id);
-		return commandHandler.clear(new ClearCommand(selection));
+		return commandHandler.clear(withIdempotencyKey(id, selection, () -> new ClearCommand(selection)));
 	}
 
 	public SettingsDTO clone(String id, String serviceName) {
-		return commandHandler.clone(new CloneSettingsCommand(id, serviceName));
+		return commandHandler
+				.clone(withIdempotencyKey(id, serviceName, () -> new CloneSettingsCommand(id, serviceName)));
 	}
 
 	public SettingsDTO create(PersistenceDTO persistence) {
-		return commandHandler.save(new SaveSettingsCommand(persistence));
+		return commandHandler.save(
+				withIdempotencyKey(persistence.getId(), persistence, () -> new SaveSettingsCommand(persistence)));
 	}
 
 	public SettingsDTO update(String id, PersistenceDTO persistence) {
 		persistence.setId(id);
-		return commandHandler.update(new UpdateSettingsCommand(persistence));
+		return commandHandler
+				.update(withIdempotencyKey(id, persistence, () -> new UpdateSettingsCommand(persistence)));
 	}
 
 	public SettingsDTO delete(String id) {
-		return commandHandler.delete(new DeleteSettingsCommand(id));
+		return commandHandler.delete(withIdempotencyKey(id, null, () -> new DeleteSettingsCommand(id)));
+	}
+
+	// Async
+
+	public CompletableFuture<SettingsDTO> selectAsync(SelectionDTO selection) {
+		return commandHandler.selectAsync(withIdempotencyKey(null, selection, () -> new SelectCommand(selection)));
+	}
+
+	public CompletableFuture<SettingsDTO> selectAsync(String id, SelectionDTO selection) {
+		selection.setId(id);
+		return commandHandler.selectAsync(withIdempotencyKey(id, selection, () -> new SelectCommand(selection)));
+	}
+
+	public CompletableFuture<SettingsDTO> deselectAsync(String id, SelectionDTO selection) {
+		selection.setId(id);
+		return commandHandler
+				.deselectAsync(withIdempotencyKey(id, selection, () -> new DeselectCommand(selection)));
+	}
+
+	public CompletableFuture<SettingsDTO> clearAsync(String id, SelectionDTO selection) {
+		selection.setId(id);
+		return commandHandler.clearAsync(withIdempotencyKey(id, selection, () -> new ClearCommand(selection)));
+	}
+
+	public CompletableFuture<SettingsDTO> cloneAsync(String id, String serviceName) {
+		return commandHandler
+				.cloneAsync(withIdempotencyKey(id, serviceName, () -> new CloneSettingsCommand(id, serviceName)));
+	}
+
+	public CompletableFuture<SettingsDTO> createAsync(PersistenceDTO persistence) {
+		return commandHandler.saveAsync(
+				withIdempotencyKey(persistence.getId(), persistence, () -> new SaveSettingsCommand(persistence)));
+	}
+
+	public CompletableFuture<SettingsDTO> updateAsync(String id, PersistenceDTO persistence) {
+		persistence.setId(id);
+		return commandHandler
+				.updateAsync(withIdempotencyKey(id, persistence, () -> new UpdateSettingsCommand(persistence)));
+	}
+
+	public CompletableFuture<SettingsDTO> deleteAsync(String id) {
+		return commandHandler.deleteAsync(withIdempotencyKey(id, null, () -> new DeleteSettingsCommand(id)));
+	}
+
+	// Batch
+
+	public List<CommandResult<SettingsDTO>> batch(List<Command> commands) {
+		return commandHandler.batch(commands);
+	}
+
+	public CompletableFuture<List<CommandResult<SettingsDTO>>> batchAsync(List<Command> commands) {
+		return commandHandler.batchAsync(commands);
+	}
+
+	/*
+	 * Crea el comando y le asigna la clave de idempotencia enviada en la petición
+	 * http en curso (si existe), junto con el id del elemento indicado por el
+	 * cliente y la huella del contenido. La huella se calcula antes de crear el
+	 * comando, ya que éste completa el contenido con ids y fechas generadas
+	 */
+	private <C extends Command> C withIdempotencyKey(String target, Object payload, Supplier<C> factory) {
+
+		String idempotencyKey = getIdempotencyKey();
+
+		if (idempotencyKey == null)
+			return factory.get();
+
+		String fingerprint = getFingerprint(payload);
+
+		C cmd = factory.get();
+		cmd.setIdempotencyKey(idempotencyKey);
+		cmd.setIdempotencyTarget(target);
+		cmd.setIdempotencyFingerprint(fingerprint);
+		return cmd;
+	}
+
+	private String getIdempotencyKey() {
+
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+
+		if (attributes instanceof ServletRequestAttributes)
+			return ((ServletRequestAttributes) attributes).getRequest().getHeader(IDEMPOTENCY_KEY_HEADER);
+		return null;
+	}
+
+	private String getFingerprint(Object payload) {
+
+		try {
+			byte[] content = objectMapper.writeValueAsBytes(payload);
+			return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(content));
+		} catch (JsonProcessingException | NoSuchAlgorithmException e) {
+			throw new IllegalStateException("No ha sido posible obtener la huella de la petición", e);
+		}
 	}
 }
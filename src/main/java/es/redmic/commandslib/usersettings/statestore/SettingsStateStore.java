@@ -20,14 +20,79 @@ package es.redmic.commandslib.usersettings.statestore;
  * #L%
  */
 
+import java.util.Map;
+
 import es.redmic.brokerlib.alert.AlertService;
+import es.redmic.brokerlib.avro.common.Event;
 import es.redmic.commandslib.streaming.common.StreamConfig;
 import es.redmic.commandslib.streaming.statestore.StateStore;
+import es.redmic.usersettingslib.dto.SettingsDTO;
+import es.redmic.usersettingslib.events.SettingsEventTypes;
+import es.redmic.usersettingslib.events.common.PersistenceEvent;
+import es.redmic.usersettingslib.events.common.SelectionEvent;
+import es.redmic.usersettingslib.events.common.SettingsCancelledEvent;
+import es.redmic.usersettingslib.events.common.SettingsEvent;
 
 public class SettingsStateStore extends StateStore {
 
+	// @formatter:off
+
+	public static final String USER_INDEX = "userId",
+			SERVICE_INDEX = "service";
+
+	// @formatter:on
+
 	public SettingsStateStore(StreamConfig config, AlertService alertService) {
 		super(config, alertService);
+
+		if (config.isIndexesEnabled()) {
+			addIndex(USER_INDEX, event -> isIndexable(event) ? event.getUserId() : null);
+			addIndex(SERVICE_INDEX, event -> isIndexable(event) ? getService(event) : null);
+		}
 		init();
 	}
+
+	/*
+	 * Settings del usuario dado (por id)
+	 */
+	public Map<String, Event> getByUserId(String userId) {
+		return getByIndex(USER_INDEX, userId);
+	}
+
+	/*
+	 * Settings del servicio dado (por id)
+	 */
+	public Map<String, Event> getByService(String service) {
+		return getByIndex(SERVICE_INDEX, service);
+	}
+
+	// Los settings borrados no se indexan
+	private static boolean isIndexable(Event event) {
+		return !SettingsEventTypes.DELETED.equals(event.getType());
+	}
+
+	private static String getService(Event event) {
+
+		if (event instanceof SettingsEvent)
+			return getService(((SettingsEvent) event).getSettings());
+
+		if (event instanceof SettingsCancelledEvent)
+			return getService(((SettingsCancelledEvent) event).getSettings());
+
+		if (event instanceof SelectionEvent)
+			return ((SelectionEvent) event).getSelection() != null
+					? ((SelectionEvent) event).getSelection().getService()
+					: null;
+
+		if (event instanceof PersistenceEvent)
+			return ((PersistenceEvent) event).getPersistence() != null
+					? ((PersistenceEvent) event).getPersistence().getService()
+					: null;
+
+		return null;
+	}
+
+	private static String getService(SettingsDTO settings) {
+		return settings != null ? settings.getService() : null;
+	}
 }
@@ -3,7 +3,6 @@ package es.redmic.commandslib.usersettings.streams;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
-import org.apache.kafka.streams.KafkaStreams;
 import org.apache.kafka.streams.StreamsBuilder;
 
 /*-
@@ -37,7 +36,6 @@ import es.redmic.brokerlib.avro.common.EventError;
 import es.redmic.brokerlib.avro.common.EventTypes;
 import es.redmic.commandslib.streaming.common.BaseStreams;
 import es.redmic.commandslib.streaming.common.StreamConfig;
-import es.redmic.commandslib.streaming.common.StreamUtils;
 import es.redmic.exception.common.ExceptionType;
 import es.redmic.usersettingslib.dto.PersistenceDTO;
 import es.redmic.usersettingslib.dto.SelectionDTO;
@@ -60,21 +58,36 @@ public class SettingsEventStreams extends BaseStreams {
 
 	protected String snapshotTopic;
 
+	// La tabla de snapshots se alimenta del topic principal sin pasar por el
+	// topic snapshot. Los eventos que otros productores escriban directamente en
+	// el topic snapshot dejan de reflejarse en la tabla. Cambia el origen del
+	// reduce y su changelog, por lo que activarlo o desactivarlo en un despliegue
+	// existente requiere resetear la aplicación del stream
+	protected boolean snapshotFromEvents;
+
 	public SettingsEventStreams(StreamConfig config, AlertService alertService) {
 		super(config, alertService);
 		snapshotTopic = topic + snapshotTopicSuffix;
+		snapshotFromEvents = config.isSnapshotFromEvents();
 		init();
 	}
 
 	@Override
-	protected KafkaStreams processStreams() {
+	protected void buildTopology(StreamsBuilder builder) {
+
+		this.builder = builder;
 
 		KStream<String, Event> events = builder.stream(topic);
 
-		KStream<String, Event> snapshotEvents = builder.stream(snapshotTopic);
+		// Eventos finales. Se siguen reenviando al topic snapshot para el resto de
+		// consumidores aunque la tabla no los lea de allí, pero lo escrito en el
+		// topic snapshot por otros productores no llega a la tabla
+		KStream<String, Event> snapshotEvents = snapshotFromEvents
+				? events.filter((id, event) -> (SettingsEventTypes.isSnapshot(event.getType())))
+				: builder.stream(snapshotTopic);
 
 		// Table filtrado por eventos finales (Siempre el último evento)
-		KTable<String, Event> snapshotKTable = snapshotEvents.groupByKey().reduce((aggValue, newValue) -> newValue);
+		KTable<String, Event> snapshotKTable = reduceToLatest(snapshotEvents.groupByKey(), "snapshot");
 
 		// Reenvia eventos snapshot al topic correspondiente
 		forwardSnapshotEvents(events);
@@ -112,9 +125,6 @@ public class SettingsEventStreams extends BaseStreams {
 		processUpdateSettingsAccessedDate(events, snapshotKTable);
 
 		proccessRollbackStream(events, snapshotKTable);
-
-		return new KafkaStreams(builder.build(),
-				StreamUtils.baseStreamsConfig(bootstrapServers, stateStoreDir, serviceId, schemaRegistry));
 	}
 
 	private void forwardSnapshotEvents(KStream<String, Event> events) {
@@ -207,9 +217,9 @@ public class SettingsEventStreams extends BaseStreams {
 
 		// Table filtrado por eventos de petición de selección (Siempre el último
 		// evento)
-		KTable<String, Event> selectRequestEvents = events
-				.filter((id, event) -> (SettingsEventTypes.SELECT.equals(event.getType()))).groupByKey()
-				.reduce((aggValue, newValue) -> newValue);
+		KTable<String, Event> selectRequestEvents = reduceToLatest(
+				events.filter((id, event) -> (SettingsEventTypes.SELECT.equals(event.getType()))).groupByKey(),
+				"select-request");
 
 		// Join por id, mandando a kafka el evento de éxito
 		selectConfirmedEvents
@@ -277,9 +287,9 @@ public class SettingsEventStreams extends BaseStreams {
 
 		// Table filtrado por eventos de petición de deselección (Siempre el último
 		// evento)
-		KTable<String, Event> deselectRequestEvents = events
-				.filter((id, event) -> (SettingsEventTypes.DESELECT.equals(event.getType()))).groupByKey()
-				.reduce((aggValue, newValue) -> newValue);
+		KTable<String, Event> deselectRequestEvents = reduceToLatest(
+				events.filter((id, event) -> (SettingsEventTypes.DESELECT.equals(event.getType()))).groupByKey(),
+				"deselect-request");
 
 		// Join por id, mandando a kafka el evento de éxito
 		deselectConfirmedEvents
@@ -374,9 +384,9 @@ public class SettingsEventStreams extends BaseStreams {
 
 		// Table filtrado por eventos de petición de limpiar selección (Siempre el
 		// último evento)
-		KTable<String, Event> clearSelectionRequestEvents = events
-				.filter((id, event) -> (SettingsEventTypes.CLEAR_SELECTION.equals(event.getType()))).groupByKey()
-				.reduce((aggValue, newValue) -> newValue);
+		KTable<String, Event> clearSelectionRequestEvents = reduceToLatest(
+				events.filter((id, event) -> (SettingsEventTypes.CLEAR_SELECTION.equals(event.getType()))).groupByKey(),
+				"clear-selection-request");
 
 		// Join por id, mandando a kafka el evento de éxito
 		clearSelectionConfirmedEvents
@@ -499,9 +509,9 @@ public class SettingsEventStreams extends BaseStreams {
 		// Table filtrado por eventos de petición de guardar selección (Siempre el
 		// último
 		// evento)
-		KTable<String, Event> saveRequestEvents = events
-				.filter((id, event) -> (SettingsEventTypes.SAVE.equals(event.getType()))).groupByKey()
-				.reduce((aggValue, newValue) -> newValue);
+		KTable<String, Event> saveRequestEvents = reduceToLatest(
+				events.filter((id, event) -> (SettingsEventTypes.SAVE.equals(event.getType()))).groupByKey(),
+				"save-request");
 
 		// Join por id, mandando a kafka el evento de éxito
 		selectConfirmedEvents
@@ -0,0 +1,120 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveTimeoutPolicyTest {
+
+	private static final String COMMAND = "PARTIAL_SAVE", OTHER_COMMAND = "PARTIAL_SELECT";
+
+	@Test
+	public void getTimeoutMS_ReturnDefaultTimeout_IfPolicyIsDisabled() {
+
+		AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(5000);
+
+		for (int i = 0; i < 1000; i++)
+			policy.record(COMMAND, 10);
+
+		assertEquals(5000, policy.getTimeoutMS(COMMAND));
+	}
+
+	@Test
+	public void getTimeoutMS_ReturnDefaultTimeout_IfNotEnoughSamples() {
+
+		AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(true, 5000, 3, 100, 5000, 100);
+
+		for (int i = 0; i < 99; i++)
+			policy.record(COMMAND, 10);
+
+		assertEquals(5000, policy.getTimeoutMS(COMMAND));
+	}
+
+	@Test
+	public void getTimeoutMS_ReturnMultipleOfP99_WhenEnoughSamples() {
+
+		AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(true, 5000, 3, 100, 5000, 100);
+
+		for (int i = 0; i < 1000; i++)
+			policy.record(COMMAND, 200);
+
+		long timeout = policy.getTimeoutMS(COMMAND);
+
+		// p99 ~ 200ms con error relativo de las cubetas <= 10%
+		assertTrue(timeout >= 600 && timeout <= 660);
+		assertEquals(5000, policy.getTimeoutMS(OTHER_COMMAND));
+	}
+
+	@Test
+	public void getTimeoutMS_BoundTimeoutBetweenMinAndMax() {
+
+		AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(true, 5000, 3, 100, 2000, 10);
+
+		for (int i = 0; i < 100; i++) {
+			policy.record(COMMAND, 1);
+			policy.record(OTHER_COMMAND, 4000);
+		}
+
+		assertEquals(100, policy.getTimeoutMS(COMMAND));
+		assertEquals(2000, policy.getTimeoutMS(OTHER_COMMAND));
+	}
+
+	@Test
+	public void getTimeoutMS_WidenTimeout_IfCommandsTimeOut() {
+
+		AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(true, 5000, 2, 100, 5000, 100);
+
+		for (int i = 0; i < 1000; i++)
+			policy.record(COMMAND, 100);
+
+		long timeout = policy.getTimeoutMS(COMMAND);
+
+		assertTrue(timeout >= 200 && timeout <= 220);
+
+		// Las confirmaciones empiezan a retrasarse más allá del plazo
+		for (int i = 0; i < 50; i++)
+			policy.recordTimeout(COMMAND, policy.getTimeoutMS(COMMAND));
+
+		long widenedTimeout = policy.getTimeoutMS(COMMAND);
+
+		assertTrue(widenedTimeout >= 2 * timeout);
+		assertTrue(widenedTimeout <= 5000);
+	}
+
+	@Test
+	public void getPercentile_ReturnUpperBoundOfBucket_WhenSketchHasSamples() {
+
+		LatencySketch sketch = new LatencySketch(10000, 1000000);
+
+		for (int i = 1; i <= 100; i++)
+			sketch.record(i * 10);
+
+		long p50 = sketch.getPercentile(0.5), p99 = sketch.getPercentile(0.99);
+
+		assertTrue(p50 >= 500 && p50 <= 550);
+		assertTrue(p99 >= 990 && p99 <= 1090);
+		assertEquals(-1, new LatencySketch(10000, 100).getPercentile(0.99));
+	}
+}
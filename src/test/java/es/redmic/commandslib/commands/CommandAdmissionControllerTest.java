@@ -0,0 +1,124 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import es.redmic.commandslib.commands.CommandAdmissionController.Permit;
+import es.redmic.commandslib.exceptions.CommandRejectedException;
+
+public class CommandAdmissionControllerTest {
+
+	private static final String COMMAND = "PARTIAL_SELECT", OTHER_COMMAND = "PARTIAL_SAVE";
+
+	@Test
+	public void acquire_AdmitRequests_IfNoLimitIsConfigured() {
+
+		CommandAdmissionController controller = new CommandAdmissionController(0, 0);
+
+		for (int i = 0; i < 100; i++)
+			controller.acquire(COMMAND);
+
+		assertEquals(100, controller.getOutstanding());
+	}
+
+	@Test(expected = CommandRejectedException.class)
+	public void acquire_ThrowCommandRejectedException_IfMaxOutstandingIsReached() {
+
+		CommandAdmissionController controller = new CommandAdmissionController(2, 0);
+
+		controller.acquire(COMMAND);
+		controller.acquire(OTHER_COMMAND);
+		controller.acquire(COMMAND);
+	}
+
+	@Test
+	public void acquire_RejectOnlyCommandType_IfMaxOutstandingPerCommandIsReached() {
+
+		CommandAdmissionController controller = new CommandAdmissionController(10, 1);
+
+		controller.acquire(COMMAND);
+
+		try {
+			controller.acquire(COMMAND);
+		} catch (CommandRejectedException e) {
+			assertEquals(1, controller.getRejectedCount());
+		}
+
+		controller.acquire(OTHER_COMMAND);
+
+		assertEquals(2, controller.getOutstanding());
+		assertEquals(1, controller.getOutstanding(COMMAND));
+	}
+
+	@Test
+	public void release_FreePermitOnlyOnce_WhenCalledTwice() {
+
+		CommandAdmissionController controller = new CommandAdmissionController(1, 1);
+
+		Permit permit = controller.acquire(COMMAND);
+
+		controller.release(permit, 0, false);
+		controller.release(permit, 0, false);
+
+		assertEquals(0, controller.getOutstanding());
+		assertEquals(0, controller.getOutstanding(COMMAND));
+
+		controller.acquire(COMMAND);
+	}
+
+	@Test
+	public void release_DecreaseAdaptiveLimit_WhenConfirmationIsSlowOrTimedOut() {
+
+		CommandAdmissionController controller = new CommandAdmissionController(100, 0, true, 10, 100);
+
+		for (int i = 0; i < 50; i++)
+			controller.release(controller.acquire(COMMAND), TimeUnit.MILLISECONDS.toNanos(500), false);
+
+		assertEquals(10, controller.getLimit());
+
+		controller.release(controller.acquire(COMMAND), 0, true);
+
+		assertEquals(10, controller.getLimit());
+	}
+
+	@Test
+	public void release_IncreaseAdaptiveLimit_WhenConfirmationIsFast() {
+
+		CommandAdmissionController controller = new CommandAdmissionController(100, 0, true, 10, 100);
+
+		controller.release(controller.acquire(COMMAND), 0, true);
+
+		int reducedLimit = controller.getLimit();
+
+		for (int i = 0; i < 500; i++)
+			controller.release(controller.acquire(COMMAND), TimeUnit.MILLISECONDS.toNanos(1), false);
+
+		assertTrue(controller.getLimit() > reducedLimit);
+		assertTrue(controller.getLimit() <= 100);
+	}
+}
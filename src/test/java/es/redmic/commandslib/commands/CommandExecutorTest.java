@@ -0,0 +1,108 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import es.redmic.commandslib.exceptions.HistoryNotFoundException;
+
+public class CommandExecutorTest {
+
+	@Test
+	public void submit_RunInCallerThread_IfVirtualThreadsAreDisabled() {
+
+		CommandExecutor executor = new CommandExecutor(false);
+
+		Thread caller = Thread.currentThread();
+
+		CompletableFuture<Thread> result = executor.submit(() -> Thread.currentThread());
+
+		assertFalse(executor.isVirtual());
+		assertEquals(caller, result.join());
+	}
+
+	@Test
+	public void submit_ReturnFailedFuture_IfCommandThrowsException() {
+
+		CommandExecutor executor = new CommandExecutor(false);
+
+		HistoryNotFoundException error = new HistoryNotFoundException("select", "id");
+
+		CompletableFuture<Object> result = executor.submit(() -> {
+			throw error;
+		});
+
+		assertTrue(result.isCompletedExceptionally());
+
+		try {
+			result.join();
+		} catch (CompletionException e) {
+			assertEquals(error, e.getCause());
+		}
+	}
+
+	@Test
+	public void submit_RunInOwnThread_IfVirtualThreadsAreSupported() {
+
+		CommandExecutor executor = new CommandExecutor(true);
+
+		// En JVMs sin hilos virtuales se ejecuta en el hilo que envía el comando
+		boolean supported = CommandExecutor.newVirtualThreadExecutor() != null;
+
+		assertEquals(supported, executor.isVirtual());
+
+		Thread caller = Thread.currentThread(), thread = executor.submit(() -> Thread.currentThread()).join();
+
+		if (supported)
+			assertTrue(thread != caller && thread.getName().startsWith("command-"));
+		else
+			assertEquals(caller, thread);
+
+		executor.shutdown();
+	}
+
+	@Test
+	public void submit_ApplyTaskDecorator_IfCommandRunsInVirtualThread() {
+
+		AtomicInteger decorated = new AtomicInteger();
+
+		CommandExecutor executor = new CommandExecutor(true, task -> {
+			decorated.incrementAndGet();
+			return task;
+		});
+
+		assertEquals("result", executor.submit(() -> "result").join());
+
+		// En el hilo que envía el comando no hay contexto que propagar
+		assertEquals(executor.isVirtual() ? 1 : 0, decorated.get());
+
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,193 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.redmic.brokerlib.alert.AlertService;
+import es.redmic.brokerlib.avro.common.Event;
+import es.redmic.commandslib.aggregate.Aggregate;
+import es.redmic.commandslib.exceptions.ConfirmationTimeoutException;
+import es.redmic.commandslib.exceptions.HistoryNotFoundException;
+import es.redmic.commandslib.gateway.BrokerEvent;
+
+public class CommandHandlerAsyncTest {
+
+	private static final String TOPIC = "topic", EVENT_TYPE = "SELECT";
+
+	CommandHandler commandHandler;
+
+	List<Object> publishedEvents;
+
+	RuntimeException publishError;
+
+	Aggregate agg;
+
+	Event event, rollbackEvent;
+
+	String sessionId;
+
+	@Before
+	public void setUp() {
+
+		publishedEvents = Collections.synchronizedList(new ArrayList<>());
+
+		commandHandler = new CommandHandler() {
+		};
+		commandHandler.setApplicationEventPublisher(evt -> {
+			if (publishError != null)
+				throw publishError;
+			publishedEvents.add(evt);
+		});
+		commandHandler.confirmationDispatcher = new ConfirmationDispatcher(true, 0, 0);
+		commandHandler.alertService = mock(AlertService.class);
+
+		sessionId = UUID.randomUUID().toString();
+
+		event = mock(Event.class);
+		when(event.getType()).thenReturn(EVENT_TYPE);
+		when(event.getSessionId()).thenReturn(sessionId);
+		when(event.getAggregateId()).thenReturn("1");
+
+		rollbackEvent = mock(Event.class);
+		when(rollbackEvent.getType()).thenReturn("PREPARE_ROLLBACK");
+
+		agg = mock(Aggregate.class);
+		when(agg.getRollbackEvent(event)).thenReturn(rollbackEvent);
+	}
+
+	@After
+	public void tearDown() {
+		commandHandler.getPendingConfirmations().shutdown();
+	}
+
+	@Test
+	public void sendEventAndGetFuture_ResolveWithResult_WhenConfirmationIsReceived() throws Exception {
+
+		CompletableFuture<String> future = commandHandler.sendEventAndGetFuture(10000, agg, event, TOPIC);
+
+		assertEquals(1, publishedEvents.size());
+		assertSame(event, ((BrokerEvent) publishedEvents.get(0)).getEvt());
+		assertFalse(future.isDone());
+
+		commandHandler.resolveCommand(sessionId, "result");
+
+		assertEquals("result", future.get(1, TimeUnit.SECONDS));
+		assertEquals(0, commandHandler.getPendingConfirmations().size());
+		assertEquals(0, commandHandler.getAdmissionController().getOutstanding());
+	}
+
+	@Test
+	public void sendEventAndGetFuture_FailWithViewException_WhenErrorIsReceived() throws Exception {
+
+		CompletableFuture<String> future = commandHandler.sendEventAndGetFuture(10000, agg, event, TOPIC);
+
+		HistoryNotFoundException error = new HistoryNotFoundException(EVENT_TYPE, "1");
+
+		commandHandler.resolveCommand(sessionId, error);
+
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertSame(error, e.getCause());
+		}
+		assertEquals(0, commandHandler.getPendingConfirmations().size());
+		assertEquals(0, commandHandler.getAdmissionController().getOutstanding());
+	}
+
+	@Test
+	public void sendEventAndGetFuture_FailWithTimeoutAndSendRollback_IfNotConfirmed() throws Exception {
+
+		CompletableFuture<String> future = commandHandler.sendEventAndGetFuture(50, agg, event, TOPIC);
+
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ConfirmationTimeoutException);
+		}
+
+		verify(agg, timeout(5000)).getRollbackEvent(event);
+		verify(commandHandler.alertService, timeout(5000)).errorAlert(anyString(), anyString());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (publishedEvents.size() < 2 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+
+		assertEquals(2, publishedEvents.size());
+		assertSame(rollbackEvent, ((BrokerEvent) publishedEvents.get(1)).getEvt());
+		assertEquals(0, commandHandler.getAdmissionController().getOutstanding());
+	}
+
+	@Test
+	public void sendEventAndGetFuture_ReleaseRequestAndFail_IfPublishThrows() throws Exception {
+
+		publishError = new IllegalStateException("buffer full");
+
+		CompletableFuture<String> future = commandHandler.sendEventAndGetFuture(10000, agg, event, TOPIC);
+
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertSame(publishError, e.getCause());
+		}
+		assertEquals(0, commandHandler.getPendingConfirmations().size());
+		assertEquals(0, commandHandler.getAdmissionController().getOutstanding());
+	}
+
+	@Test
+	public void sendEventAndWaitResult_RemovePendingEntry_IfPublishThrows() {
+
+		publishError = new IllegalStateException("buffer full");
+
+		try {
+			commandHandler.sendEventAndWaitResult(agg, event, TOPIC);
+			fail();
+		} catch (IllegalStateException e) {
+			assertSame(publishError, e);
+		}
+		assertEquals(0, commandHandler.getPendingConfirmations().size());
+		assertEquals(0, commandHandler.getAdmissionController().getOutstanding());
+	}
+}
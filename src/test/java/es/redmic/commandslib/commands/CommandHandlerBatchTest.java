@@ -0,0 +1,114 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.redmic.commandslib.exceptions.HistoryNotFoundException;
+import es.redmic.commandslib.gateway.BrokerEvent;
+
+public class CommandHandlerBatchTest {
+
+	private static final String TOPIC = "topic";
+
+	CommandHandler commandHandler;
+
+	List<Object> publishedEvents;
+
+	@Before
+	public void setUp() {
+
+		publishedEvents = new ArrayList<>();
+
+		commandHandler = new CommandHandler() {
+		};
+		commandHandler.setApplicationEventPublisher(event -> publishedEvents.add(event));
+	}
+
+	@Test
+	public void executeBatchAsync_WaitForAllCommands_WhenEachEventIsPublished() {
+
+		CompletableFuture<String> first = new CompletableFuture<>(), second = new CompletableFuture<>();
+
+		List<Supplier<CompletableFuture<String>>> commands = Arrays.asList(() -> {
+			commandHandler.publishToKafka(null, TOPIC);
+			assertEquals(1, publishedEvents.size());
+			return first;
+		}, () -> {
+			commandHandler.publishToKafka(null, TOPIC);
+			return second;
+		});
+
+		CompletableFuture<List<CommandResult<String>>> results = commandHandler.executeBatchAsync(commands);
+
+		assertEquals(2, publishedEvents.size());
+		assertTrue(publishedEvents.get(0) instanceof BrokerEvent);
+		assertFalse(results.isDone());
+
+		first.complete("first");
+
+		assertFalse(results.isDone());
+
+
+		second.complete("second");
+
+		assertEquals("first", results.join().get(0).getResult());
+		assertEquals("second", results.join().get(1).getResult());
+	}
+
+	@Test
+	public void executeBatchAsync_ReturnErrorPerItem_IfSomeCommandFails() {
+
+		HistoryNotFoundException error = new HistoryNotFoundException("select", "id");
+
+		List<Supplier<CompletableFuture<String>>> commands = Arrays.asList(
+				() -> CompletableFuture.completedFuture("ok"), () -> {
+					throw error;
+				});
+
+		List<CommandResult<String>> results = commandHandler.executeBatchAsync(commands).join();
+
+		assertTrue(results.get(0).isSuccess());
+		assertFalse(results.get(1).isSuccess());
+		assertEquals(error, results.get(1).getError());
+		assertTrue(publishedEvents.isEmpty());
+	}
+
+	@Test
+	public void publishToKafka_PublishImmediately_WhenEventIsSent() {
+
+		commandHandler.publishToKafka(null, TOPIC);
+
+		assertEquals(1, publishedEvents.size());
+	}
+}
@@ -0,0 +1,107 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.redmic.commandslib.exceptions.ConfirmationTimeoutException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CommandMetricsTest {
+
+	private static final String HANDLER = "TestHandler", COMMAND = "PARTIAL_SAVE";
+
+	MeterRegistry registry;
+
+	CommandMetrics metrics;
+
+	@Before
+	public void setUp() {
+		registry = new SimpleMeterRegistry();
+		metrics = new CommandMetrics(registry, HANDLER);
+	}
+
+	@Test
+	public void recordConfirmation_TagByCommandAndOutcome_WhenRequestIsResolved() {
+
+		metrics.recordConfirmation(COMMAND, System.nanoTime(), null);
+		metrics.recordConfirmation(COMMAND, System.nanoTime(), new ConfirmationTimeoutException());
+
+		assertEquals(1, getTimer(CommandMetrics.OUTCOME_SUCCESS).count());
+		assertEquals(1, getTimer(CommandMetrics.OUTCOME_TIMEOUT).count());
+		assertNull(registry.find(CommandMetrics.CONFIRMATION_TIMER).tag(CommandMetrics.OUTCOME_TAG,
+				CommandMetrics.OUTCOME_ERROR).timer());
+		assertEquals(1.0, registry.get(CommandMetrics.TIMEOUT_COUNTER).tag(CommandMetrics.COMMAND_TAG, COMMAND)
+				.counter().count(), 0.0);
+	}
+
+	@Test
+	public void incrementRollback_TagByReason_WhenRollbackIsSent() {
+
+		metrics.incrementRollback(COMMAND, CommandMetrics.ROLLBACK_REASON_UNLOCK);
+		metrics.incrementRollback(COMMAND, CommandMetrics.ROLLBACK_REASON_UNLOCK);
+
+		assertEquals(2.0, registry.get(CommandMetrics.ROLLBACK_COUNTER)
+				.tag(CommandMetrics.REASON_TAG, CommandMetrics.ROLLBACK_REASON_UNLOCK).counter().count(), 0.0);
+	}
+
+	@Test
+	public void bindGauges_ExposePendingRequests_WhenRegistryIsAvailable() {
+
+		PendingConfirmationRegistry pendingConfirmations = new PendingConfirmationRegistry();
+		ConfirmationDispatcher dispatcher = new ConfirmationDispatcher(true, 1, 1);
+
+		try {
+			metrics.bindGauges(pendingConfirmations, dispatcher);
+			pendingConfirmations.register("sessionId", 10000, null);
+
+			assertNotNull(registry.find(CommandMetrics.PENDING_GAUGE).gauge());
+			assertEquals(1.0, registry.get(CommandMetrics.PENDING_GAUGE).gauge().value(), 0.0);
+		} finally {
+			pendingConfirmations.shutdown();
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void recordConfirmation_DoNothing_IfRegistryIsNotAvailable() {
+
+		CommandMetrics disabled = new CommandMetrics(null, HANDLER);
+
+		assertFalse(disabled.isEnabled());
+		disabled.recordConfirmation(COMMAND, System.nanoTime(), null);
+		disabled.incrementRollback(COMMAND, CommandMetrics.ROLLBACK_REASON_TIMEOUT);
+	}
+
+	private Timer getTimer(String outcome) {
+		return registry.get(CommandMetrics.CONFIRMATION_TIMER).tag(CommandMetrics.HANDLER_TAG, HANDLER)
+				.tag(CommandMetrics.COMMAND_TAG, COMMAND).tag(CommandMetrics.OUTCOME_TAG, outcome).timer();
+	}
+}
@@ -0,0 +1,176 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.redmic.commandslib.exceptions.ConfirmationTimeoutException;
+import es.redmic.commandslib.exceptions.HistoryNotFoundException;
+import es.redmic.commandslib.exceptions.IdempotencyKeyConflictException;
+import es.redmic.commandslib.exceptions.StoreNotReadyException;
+
+public class CommandReplayCacheTest {
+
+	private static final String KEY = "SelectCommand:key";
+
+	CommandReplayCache cache;
+
+	AtomicInteger executions;
+
+	@Before
+	public void setUp() {
+		cache = new CommandReplayCache(2, 60000);
+		executions = new AtomicInteger();
+	}
+
+	@Test
+	public void execute_ReturnCachedResult_IfKeyWasAlreadyExecuted() throws Exception {
+
+		Object result = new Object();
+
+		CompletableFuture<Object> first = cache.execute(KEY, () -> run(CompletableFuture.completedFuture(result)));
+		CompletableFuture<Object> retry = cache.execute(KEY, () -> run(CompletableFuture.completedFuture(null)));
+
+		assertSame(result, first.get());
+		assertSame(result, retry.get());
+		assertEquals(1, executions.get());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void execute_JoinPendingCommand_IfRetriedBeforeResolved() throws Exception {
+
+		CompletableFuture<Object> pending = new CompletableFuture<>();
+
+		CompletableFuture<Object> first = cache.execute(KEY, () -> run(pending));
+		CompletableFuture<Object> retry = cache.execute(KEY, () -> run(new CompletableFuture<>()));
+
+		assertFalse(retry.isDone());
+
+		pending.complete("result");
+
+		assertEquals("result", first.get());
+		assertEquals("result", retry.get());
+		assertEquals(1, executions.get());
+	}
+
+	@Test
+	public void execute_ReturnCachedError_IfCommandFailedWithDefinitiveError() {
+
+		CompletableFuture<Object> failed = new CompletableFuture<>();
+		failed.completeExceptionally(new HistoryNotFoundException("select", "id"));
+
+		cache.execute(KEY, () -> run(failed));
+		CompletableFuture<Object> retry = cache.execute(KEY, () -> run(CompletableFuture.completedFuture(null)));
+
+		assertTrue(retry.isCompletedExceptionally());
+		assertEquals(1, executions.get());
+	}
+
+	@Test
+	public void execute_ExecuteAgain_IfCommandTimedOut() throws Exception {
+
+		CompletableFuture<Object> timedOut = new CompletableFuture<>();
+		timedOut.completeExceptionally(new ConfirmationTimeoutException());
+
+		cache.execute(KEY, () -> run(timedOut));
+		CompletableFuture<Object> retry = cache.execute(KEY, () -> run(CompletableFuture.completedFuture("ok")));
+
+		assertEquals("ok", retry.get());
+		assertEquals(2, executions.get());
+	}
+
+	@Test
+	public void execute_ExecuteAgain_IfStoreWasNotReady() throws Exception {
+
+		CompletableFuture<Object> notReady = new CompletableFuture<>();
+		notReady.completeExceptionally(new StoreNotReadyException("settings"));
+
+		cache.execute(KEY, () -> run(notReady));
+		CompletableFuture<Object> retry = cache.execute(KEY, () -> run(CompletableFuture.completedFuture("ok")));
+
+		assertEquals("ok", retry.get());
+		assertEquals(2, executions.get());
+	}
+
+	@Test
+	public void execute_ReturnCachedResult_IfKeyIsReusedWithSameFingerprint() throws Exception {
+
+		cache.execute(KEY, "hash", () -> run(CompletableFuture.completedFuture("first")));
+		CompletableFuture<Object> retry = cache.execute(KEY, "hash",
+				() -> run(CompletableFuture.completedFuture("second")));
+
+		assertEquals("first", retry.get());
+		assertEquals(1, executions.get());
+	}
+
+	@Test
+	public void execute_RejectCommand_IfKeyIsReusedWithDifferentFingerprint() {
+
+		cache.execute(KEY, "hash", () -> run(CompletableFuture.completedFuture("first")));
+		CompletableFuture<Object> retry = cache.execute(KEY, "other",
+				() -> run(CompletableFuture.completedFuture("second")));
+
+		assertTrue(retry.isCompletedExceptionally());
+		assertTrue(retry.handle((value, ex) -> ex).join() instanceof IdempotencyKeyConflictException);
+		assertEquals(1, executions.get());
+	}
+
+	@Test
+	public void execute_EvictOldestEntry_IfMaxEntriesIsExceeded() throws Exception {
+
+		cache.execute("a", () -> run(CompletableFuture.completedFuture("a")));
+		cache.execute("b", () -> run(CompletableFuture.completedFuture("b")));
+		cache.execute("c", () -> run(CompletableFuture.completedFuture("c")));
+
+		assertEquals(2, cache.size());
+
+		cache.execute("a", () -> run(CompletableFuture.completedFuture("a2")));
+
+		assertEquals(4, executions.get());
+	}
+
+	@Test
+	public void execute_AlwaysExecute_IfKeyIsNull() throws ExecutionException, InterruptedException {
+
+		cache.execute(null, () -> run(CompletableFuture.completedFuture(null)));
+		cache.execute(null, () -> run(CompletableFuture.completedFuture(null)));
+
+		assertEquals(2, executions.get());
+		assertEquals(0, cache.size());
+	}
+
+	private <T> CompletableFuture<T> run(CompletableFuture<T> result) {
+		executions.incrementAndGet();
+		return result;
+	}
+}
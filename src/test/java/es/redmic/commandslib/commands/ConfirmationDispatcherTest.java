@@ -0,0 +1,139 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ConfirmationDispatcherTest {
+
+	ConfirmationDispatcher dispatcher;
+
+	@After
+	public void tearDown() {
+		if (dispatcher != null)
+			dispatcher.shutdown();
+	}
+
+	@Test
+	public void dispatch_RunInPoolThread_IfPoolIsNotSaturated() throws Exception {
+
+		dispatcher = new ConfirmationDispatcher(false, 1, 10);
+
+		AtomicReference<String> threadName = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(1);
+
+		dispatcher.dispatch(() -> {
+			threadName.set(Thread.currentThread().getName());
+			done.countDown();
+		});
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(threadName.get().startsWith("command-confirmation-"));
+		assertEquals(1, dispatcher.getDispatchedCount());
+		assertEquals(0, dispatcher.getCallerRunsCount());
+	}
+
+	@Test
+	public void dispatch_RunInCallerThreadAndCompleteAll_IfPoolIsSaturated() throws Exception {
+
+		dispatcher = new ConfirmationDispatcher(false, 1, 1);
+
+		CountDownLatch blocked = new CountDownLatch(1), release = new CountDownLatch(1),
+				completed = new CountDownLatch(4);
+
+		// Ocupa el único hilo del pool
+		dispatcher.dispatch(() -> {
+			blocked.countDown();
+			await(release);
+			completed.countDown();
+		});
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+		// Llena la cola
+		dispatcher.dispatch(() -> completed.countDown());
+
+		// Con el pool saturado, se ejecutan en el hilo que las envía
+		String caller = Thread.currentThread().getName();
+		AtomicReference<String> threadName = new AtomicReference<>();
+
+		dispatcher.dispatch(() -> {
+			threadName.set(Thread.currentThread().getName());
+			completed.countDown();
+		});
+		dispatcher.dispatch(() -> completed.countDown());
+
+		assertEquals(caller, threadName.get());
+		assertEquals(2, dispatcher.getCallerRunsCount());
+
+		release.countDown();
+
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+		assertEquals(4, dispatcher.getDispatchedCount());
+		assertEquals(0, dispatcher.getFailedCount());
+	}
+
+	@Test
+	public void dispatch_RunInCallerThread_IfInline() {
+
+		dispatcher = new ConfirmationDispatcher(true, 0, 0);
+
+		AtomicReference<String> threadName = new AtomicReference<>();
+
+		dispatcher.dispatch(() -> threadName.set(Thread.currentThread().getName()));
+
+		assertEquals(Thread.currentThread().getName(), threadName.get());
+		assertEquals(1, dispatcher.getDispatchedCount());
+		assertEquals(0, dispatcher.getCallerRunsCount());
+		assertEquals(0, dispatcher.getQueueSize());
+	}
+
+	@Test
+	public void dispatch_CountFailureAndKeepRunning_IfTaskThrowsException() throws Exception {
+
+		dispatcher = new ConfirmationDispatcher(true, 0, 0);
+
+		dispatcher.dispatch(() -> {
+			throw new IllegalStateException();
+		});
+
+		CountDownLatch done = new CountDownLatch(1);
+		dispatcher.dispatch(() -> done.countDown());
+
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+		assertEquals(1, dispatcher.getFailedCount());
+	}
+
+	private void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.redmic.commandslib.gateway.EventHeaders;
+
+public class EventTypeFilteringDeserializerTest {
+
+	private static final String TOPIC = "topic";
+
+	private static final byte[] DATA = "data".getBytes(StandardCharsets.UTF_8);
+
+	CountingDeserializer delegate;
+
+	EventTypeFilteringDeserializer<String> deserializer;
+
+	@Before
+	public void setUp() {
+		delegate = new CountingDeserializer();
+		deserializer = new EventTypeFilteringDeserializer<>(delegate, Collections.singleton("IGNORED"));
+	}
+
+	@Test
+	public void deserialize_ReturnNullWithoutDecoding_IfEventTypeHeaderIsIgnored() {
+
+		RecordHeaders headers = new RecordHeaders();
+		headers.add(EventHeaders.EVENT_TYPE, "IGNORED".getBytes(StandardCharsets.UTF_8));
+
+		assertNull(deserializer.deserialize(TOPIC, headers, DATA));
+		assertEquals(0, delegate.count);
+	}
+
+	@Test
+	public void deserialize_DelegateDecoding_IfEventTypeHeaderIsNotIgnored() {
+
+		RecordHeaders headers = new RecordHeaders();
+		headers.add(EventHeaders.EVENT_TYPE, "TERMINAL".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals("data", deserializer.deserialize(TOPIC, headers, DATA));
+		assertEquals(1, delegate.count);
+	}
+
+	@Test
+	public void deserialize_DelegateDecoding_IfRecordHasNoEventTypeHeader() {
+
+		assertEquals("data", deserializer.deserialize(TOPIC, new RecordHeaders(), DATA));
+		assertEquals(1, delegate.count);
+	}
+
+	@Test
+	public void deserialize_UseLastEventTypeHeader_IfHeaderIsRepeated() {
+
+		RecordHeaders headers = new RecordHeaders();
+		headers.add(EventHeaders.EVENT_TYPE, "TERMINAL".getBytes(StandardCharsets.UTF_8));
+		headers.add(EventHeaders.EVENT_TYPE, "IGNORED".getBytes(StandardCharsets.UTF_8));
+
+		assertNull(deserializer.deserialize(TOPIC, headers, DATA));
+	}
+
+	@Test
+	public void deserialize_ReturnNullWithoutDecoding_IfReplySessionIsNotPending() {
+
+		EventTypeFilteringDeserializer<String> replyDeserializer = getReplyDeserializer();
+
+		assertNull(replyDeserializer.deserialize(TOPIC, getHeaders("TERMINAL", "otherSession"), DATA));
+		assertEquals(0, delegate.count);
+	}
+
+	@Test
+	public void deserialize_DelegateDecoding_IfReplySessionIsPending() {
+
+		EventTypeFilteringDeserializer<String> replyDeserializer = getReplyDeserializer();
+
+		assertEquals("data", replyDeserializer.deserialize(TOPIC, getHeaders("TERMINAL", "pendingSession"), DATA));
+		assertEquals(1, delegate.count);
+	}
+
+	@Test
+	public void deserialize_DelegateDecoding_IfReplyHasNoSessionHeader() {
+
+		EventTypeFilteringDeserializer<String> replyDeserializer = getReplyDeserializer();
+
+		assertEquals("data", replyDeserializer.deserialize(TOPIC, getHeaders("TERMINAL", null), DATA));
+		assertEquals(1, delegate.count);
+	}
+
+	@Test
+	public void deserialize_DelegateDecoding_IfEventIsNotReplyAndSessionIsNotPending() {
+
+		EventTypeFilteringDeserializer<String> replyDeserializer = getReplyDeserializer();
+
+		assertEquals("data", replyDeserializer.deserialize(TOPIC, getHeaders("CHECKED", "otherSession"), DATA));
+		assertEquals(1, delegate.count);
+	}
+
+	private EventTypeFilteringDeserializer<String> getReplyDeserializer() {
+
+		return new EventTypeFilteringDeserializer<>(delegate, Collections.singleton("IGNORED"),
+				Collections.singleton("TERMINAL"), "pendingSession"::equals);
+	}
+
+	private RecordHeaders getHeaders(String eventType, String sessionId) {
+
+		RecordHeaders headers = new RecordHeaders();
+		EventHeaders.stamp(headers, eventType, sessionId);
+		return headers;
+	}
+
+	static class CountingDeserializer implements Deserializer<String> {
+
+		int count;
+
+		@Override
+		public void configure(Map<String, ?> configs, boolean isKey) {
+		}
+
+		@Override
+		public String deserialize(String topic, byte[] data) {
+			count++;
+			return new String(data, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
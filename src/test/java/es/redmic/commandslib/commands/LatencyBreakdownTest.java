@@ -0,0 +1,78 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class LatencyBreakdownTest {
+
+	@Test
+	public void compute_OrderStagesByTimestamp_WhenStagesAreUnordered() {
+
+		Map<String, Long> stages = new HashMap<>();
+		stages.put("SAVED", 1300L);
+		stages.put("gateway", 1010L);
+		stages.put("SAVE", 1100L);
+
+		Map<String, Long> breakdown = LatencyBreakdown.compute(1000L, stages, 1350L, 1360L);
+
+		assertEquals(Arrays.asList("gateway", "SAVE", "SAVED", LatencyBreakdown.RECEIVED_STAGE,
+				LatencyBreakdown.RESOLVED_STAGE), new ArrayList<>(breakdown.keySet()));
+		assertEquals(Long.valueOf(10), breakdown.get("gateway"));
+		assertEquals(Long.valueOf(90), breakdown.get("SAVE"));
+		assertEquals(Long.valueOf(200), breakdown.get("SAVED"));
+		assertEquals(Long.valueOf(50), breakdown.get(LatencyBreakdown.RECEIVED_STAGE));
+		assertEquals(Long.valueOf(10), breakdown.get(LatencyBreakdown.RESOLVED_STAGE));
+	}
+
+	@Test
+	public void compute_DiscardStages_IfPreviousToRegistration() {
+
+		Map<String, Long> stages = new HashMap<>();
+		stages.put("SAVE", 900L);
+
+		Map<String, Long> breakdown = LatencyBreakdown.compute(1000L, stages, 1100L, 1100L);
+
+		assertFalse(breakdown.containsKey("SAVE"));
+		assertEquals(Long.valueOf(100), breakdown.get(LatencyBreakdown.RECEIVED_STAGE));
+	}
+
+	@Test
+	public void compute_ReturnZero_IfClocksAreSkewed() {
+
+		Map<String, Long> stages = new HashMap<>();
+		stages.put("SAVED", 1200L);
+
+		Map<String, Long> breakdown = LatencyBreakdown.compute(1000L, stages, 1100L, 1150L);
+
+		assertEquals(Long.valueOf(0), breakdown.get(LatencyBreakdown.RECEIVED_STAGE));
+		assertEquals(Long.valueOf(0), breakdown.get(LatencyBreakdown.RESOLVED_STAGE));
+	}
+}
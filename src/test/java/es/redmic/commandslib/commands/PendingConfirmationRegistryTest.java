@@ -0,0 +1,148 @@
+package es.redmic.commandslib.commands;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.redmic.commandslib.exceptions.ConfirmationTimeoutException;
+
+public class PendingConfirmationRegistryTest {
+
+	PendingConfirmationRegistry registry;
+
+	@Before
+	public void setUp() {
+		registry = new PendingConfirmationRegistry();
+	}
+
+	@After
+	public void tearDown() {
+		registry.shutdown();
+	}
+
+	@Test
+	public void complete_ResolveFutureAndRemoveEntry_IfSessionIsRegistered() throws Exception {
+
+		String sessionId = UUID.randomUUID().toString();
+
+		CompletableFuture<Object> future = registry.register(sessionId, 10000, null);
+
+		assertEquals(1, registry.size());
+
+		assertTrue(registry.complete(sessionId, "result"));
+
+		assertEquals("result", future.get(1, TimeUnit.SECONDS));
+		assertEquals(0, registry.size());
+		assertEquals(1, registry.getCompletedCount());
+	}
+
+	@Test
+	public void complete_ReturnFalse_IfSessionIsNotRegistered() {
+
+		assertFalse(registry.complete(UUID.randomUUID().toString(), null));
+	}
+
+	@Test
+	public void register_ExpireFutureWithConfirmationTimeoutException_IfNotCompletedBeforeDeadline()
+			throws Exception {
+
+		String sessionId = UUID.randomUUID().toString();
+
+		CountDownLatch expired = new CountDownLatch(1);
+
+		CompletableFuture<Object> future = registry.register(sessionId, 100, () -> expired.countDown());
+
+		assertTrue(expired.await(5, TimeUnit.SECONDS));
+
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ConfirmationTimeoutException);
+		}
+
+		assertEquals(0, registry.size());
+		assertEquals(1, registry.getExpiredCount());
+		assertFalse(registry.complete(sessionId, null));
+	}
+
+	@Test
+	public void register_ExpireOtherFutures_IfOnExpireBlocks() throws Exception {
+
+		CountDownLatch blocking = new CountDownLatch(1), release = new CountDownLatch(1);
+
+		registry.register(UUID.randomUUID().toString(), 50, () -> {
+			blocking.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		assertTrue(blocking.await(5, TimeUnit.SECONDS));
+
+		CompletableFuture<Object> future = registry.register(UUID.randomUUID().toString(), 50, null);
+
+		try {
+			future.get(2, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ConfirmationTimeoutException);
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void register_NotExpireFuture_IfCompletedBeforeDeadline() throws Exception {
+
+		String sessionId = UUID.randomUUID().toString();
+
+		CountDownLatch expired = new CountDownLatch(1);
+
+		registry.register(sessionId, 100, () -> expired.countDown());
+		registry.complete(sessionId, null);
+
+		assertFalse(expired.await(500, TimeUnit.MILLISECONDS));
+		assertEquals(0, registry.getExpiredCount());
+	}
+
+	@Test
+	public void getOldestAgeMs_ReturnZero_IfRegistryIsEmpty() {
+
+		assertEquals(0, registry.getOldestAgeMs());
+	}
+}
@@ -0,0 +1,131 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.redmic.brokerlib.avro.common.Event;
+import es.redmic.brokerlib.avro.common.EventTypes;
+import es.redmic.commandslib.gateway.EventHeaders;
+
+public class EventHeadersInterceptorTest {
+
+	private static final String TOPIC = "settings";
+
+	EventHeadersSerde<SpecificRecord> serde;
+
+	EventHeadersInterceptor interceptor = new EventHeadersInterceptor();
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setUp() {
+
+		Serde<SpecificRecord> delegate = mock(Serde.class);
+		when(delegate.serializer()).thenReturn(mock(Serializer.class));
+
+		serde = new EventHeadersSerde<>(delegate);
+	}
+
+	@After
+	public void tearDown() {
+
+		EventHeadersSerde.takeLastSerialized();
+	}
+
+	@Test
+	public void onSend_StampSentEvent_IfEventWasSerializedForRecordTopic() {
+
+		serde.serializer().serialize(TOPIC, getEvent(EventTypes.UPDATED, "session2"));
+
+		ProducerRecord<byte[], byte[]> record = interceptor
+				.onSend(getRecord(TOPIC, getInheritedHeaders(EventTypes.UPDATE_CONFIRMED, "session1")));
+
+		assertEquals(EventTypes.UPDATED, getHeader(record.headers(), EventHeaders.EVENT_TYPE));
+		assertEquals("session2", getHeader(record.headers(), EventHeaders.SESSION_ID));
+		assertNotNull(getHeader(record.headers(), EventHeaders.STAGE_PREFIX + EventTypes.UPDATED));
+		assertNull(EventHeadersSerde.takeLastSerialized());
+	}
+
+	@Test
+	public void onSend_RemoveInheritedHeaders_IfNoEventWasSerialized() {
+
+		ProducerRecord<byte[], byte[]> record = interceptor
+				.onSend(getRecord(TOPIC, getInheritedHeaders(EventTypes.UPDATE_CONFIRMED, "session1")));
+
+		assertNull(getHeader(record.headers(), EventHeaders.EVENT_TYPE));
+		assertNull(getHeader(record.headers(), EventHeaders.SESSION_ID));
+	}
+
+	@Test
+	public void onSend_RemoveInheritedHeaders_IfEventWasSerializedForOtherTopic() {
+
+		serde.serializer().serialize(TOPIC + "-changelog", getEvent(EventTypes.UPDATED, "session2"));
+
+		ProducerRecord<byte[], byte[]> record = interceptor
+				.onSend(getRecord(TOPIC, getInheritedHeaders(EventTypes.UPDATE_CONFIRMED, "session1")));
+
+		assertNull(getHeader(record.headers(), EventHeaders.EVENT_TYPE));
+		assertNull(getHeader(record.headers(), EventHeaders.STAGE_PREFIX + EventTypes.UPDATED));
+	}
+
+	private Event getEvent(String type, String sessionId) {
+
+		Event event = mock(Event.class);
+		when(event.getType()).thenReturn(type);
+		when(event.getSessionId()).thenReturn(sessionId);
+		return event;
+	}
+
+	private Headers getInheritedHeaders(String type, String sessionId) {
+
+		Headers headers = new RecordHeaders();
+		EventHeaders.stamp(headers, type, sessionId);
+		return headers;
+	}
+
+	private ProducerRecord<byte[], byte[]> getRecord(String topic, Headers headers) {
+
+		return new ProducerRecord<>(topic, null, null, new byte[0], new byte[0], headers);
+	}
+
+	private String getHeader(Headers headers, String key) {
+
+		Header header = headers.lastHeader(key);
+		return (header != null) ? new String(header.value(), StandardCharsets.UTF_8) : null;
+	}
+}
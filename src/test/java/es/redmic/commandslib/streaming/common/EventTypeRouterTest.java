@@ -0,0 +1,122 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.TopologyDescription;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Predicate;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import es.redmic.brokerlib.avro.common.Event;
+import es.redmic.brokerlib.avro.common.EventTypes;
+
+public class EventTypeRouterTest {
+
+	EventTypeRouter router = new EventTypeRouter(
+			Arrays.asList(EventTypes.CREATE, EventTypes.UPDATE, EventTypes.CREATE, EventTypes.DELETE_FAILED));
+
+	@Test
+	public void constructor_RemoveDuplicatedTypes_KeepingOrder() {
+
+		assertEquals(Arrays.asList(EventTypes.CREATE, EventTypes.UPDATE, EventTypes.DELETE_FAILED),
+				router.getEventTypes());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_ThrowException_IfNoTypes() {
+
+		new EventTypeRouter(Collections.emptyList());
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void route_MatchOnlyBranchOfEventType() {
+
+		KStream<String, Event> events = mock(KStream.class);
+		when(events.branch(any())).thenReturn(new KStream[] { mock(KStream.class), mock(KStream.class),
+				mock(KStream.class) });
+
+		router.route(events);
+
+		ArgumentCaptor<Predicate[]> captor = ArgumentCaptor.forClass(Predicate[].class);
+		verify(events).branch(captor.capture());
+
+		Predicate<String, Event>[] predicates = captor.getValue();
+
+		assertEquals(3, predicates.length);
+
+		Event updateEvent = getEvent(EventTypes.UPDATE);
+		assertFalse(predicates[0].test("1", updateEvent));
+		assertTrue(predicates[1].test("1", updateEvent));
+		assertFalse(predicates[2].test("1", updateEvent));
+
+		Event notRoutedEvent = getEvent(EventTypes.PREPARE_ROLLBACK);
+		for (Predicate<String, Event> predicate : predicates)
+			assertFalse(predicate.test("1", notRoutedEvent));
+	}
+
+	@Test
+	public void route_AddOneBranchNode_WithOneChildPerType() {
+
+		StreamsBuilder builder = new StreamsBuilder();
+
+		KStream<String, Event> events = builder.stream("topic");
+
+		Map<String, KStream<String, Event>> routedEvents = router.route(events);
+
+		assertEquals(router.getEventTypes(), Arrays.asList(routedEvents.keySet().toArray()));
+
+		int branches = 0, children = 0;
+
+		for (TopologyDescription.Subtopology subtopology : builder.build().describe().subtopologies()) {
+			for (TopologyDescription.Node node : subtopology.nodes()) {
+				if (node.name().startsWith("KSTREAM-BRANCHCHILD-"))
+					children++;
+				else if (node.name().startsWith("KSTREAM-BRANCH-"))
+					branches++;
+			}
+		}
+
+		assertEquals(1, branches);
+		assertEquals(3, children);
+	}
+
+	private Event getEvent(String type) {
+
+		Event event = mock(Event.class);
+		when(event.getType()).thenReturn(type);
+		return event;
+	}
+}
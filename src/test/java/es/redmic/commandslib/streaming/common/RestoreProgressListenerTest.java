@@ -0,0 +1,101 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RestoreProgressListenerTest {
+
+	private static final String STORE = "settings";
+
+	private final TopicPartition partition = new TopicPartition(STORE, 0);
+
+	private final AtomicLong now = new AtomicLong();
+
+	RestoreProgressListener listener;
+
+	@Before
+	public void setUp() {
+
+		listener = new RestoreProgressListener(now::get);
+	}
+
+	@Test
+	public void getEtaSeconds_ReturnUnknown_IfNothingWasRestored() {
+
+		listener.onRestoreStart(partition, STORE, 0, 1000);
+
+		assertEquals(1000, listener.getRemainingRecords());
+		assertEquals(1, listener.getActiveRestores());
+		assertEquals(-1, listener.getEtaSeconds());
+	}
+
+	@Test
+	public void getEtaSeconds_EstimateFromRestoreRate() {
+
+		listener.onRestoreStart(partition, STORE, 0, 1000);
+
+		now.set(2000);
+		listener.onBatchRestored(partition, STORE, 200, 200);
+
+		// 200 registros en 2 s
+		assertEquals(100.0, listener.getRecordsPerSecond(), 0.001);
+		assertEquals(800, listener.getRemainingRecords());
+		assertEquals(8, listener.getEtaSeconds());
+	}
+
+	@Test
+	public void getRemainingRecords_ReturnZero_IfRestoreHasEnded() {
+
+		listener.onRestoreStart(partition, STORE, 0, 1000);
+
+		now.set(1000);
+		listener.onBatchRestored(partition, STORE, 1000, 1000);
+		listener.onRestoreEnd(partition, STORE, 1000);
+
+		assertEquals(0, listener.getRemainingRecords());
+		assertEquals(0, listener.getActiveRestores());
+		assertEquals(0, listener.getEtaSeconds());
+	}
+
+	@Test
+	public void getActiveRestores_CountEachTopic_IfStoreNameIsRepeated() {
+
+		TopicPartition otherPartition = new TopicPartition("other", 0);
+
+		listener.onRestoreStart(partition, STORE, 0, 1000);
+		listener.onRestoreStart(otherPartition, STORE, 0, 500);
+
+		assertEquals(2, listener.getActiveRestores());
+		assertEquals(1500, listener.getRemainingRecords());
+
+		listener.onRestoreEnd(otherPartition, STORE, 500);
+
+		assertEquals(1, listener.getActiveRestores());
+		assertEquals(1000, listener.getRemainingRecords());
+	}
+}
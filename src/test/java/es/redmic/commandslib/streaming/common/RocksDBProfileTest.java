@@ -0,0 +1,84 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.streams.StreamsConfig;
+import org.junit.Test;
+import org.rocksdb.CompressionType;
+import org.rocksdb.Options;
+
+import es.redmic.commandslib.streaming.common.StreamUtils.CustomRocksDBConfig;
+
+public class RocksDBProfileTest {
+
+	private static final long MB = 1024 * 1024;
+
+	@Test
+	public void apply_UseProfileSizes_IfMemoryIsNotLimited() {
+
+		try (Options options = new Options()) {
+
+			RocksDBProfile.WRITE_HEAVY.apply(options, 0);
+
+			assertEquals(RocksDBProfile.WRITE_HEAVY.getWriteBufferBytes(), options.writeBufferSize());
+			assertEquals(RocksDBProfile.WRITE_HEAVY.getMaxWriteBuffers(), options.maxWriteBufferNumber());
+			assertEquals(CompressionType.LZ4_COMPRESSION, options.compressionType());
+		}
+	}
+
+	@Test
+	public void apply_ReduceWriteBuffers_IfMemoryIsLimited() {
+
+		try (Options options = new Options()) {
+
+			RocksDBProfile.POINT_LOOKUP.apply(options, 16 * MB);
+
+			// La mitad del límite repartida entre los buffers
+			assertEquals(8 * MB / RocksDBProfile.POINT_LOOKUP.getMaxWriteBuffers(), options.writeBufferSize());
+		}
+	}
+
+	@Test
+	public void setConfig_SplitMemoryBudgetBetweenStores() {
+
+		Map<String, Object> configs = new HashMap<>();
+		configs.put(StreamsConfig.APPLICATION_ID_CONFIG, "test");
+		configs.put(StreamUtils.ROCKSDB_PROFILE_CONFIG, "memory_capped");
+		configs.put(StreamUtils.ROCKSDB_MEMORY_BUDGET_CONFIG, 64 * MB);
+		configs.put(StreamUtils.ROCKSDB_MAX_STORES_CONFIG, 8);
+
+		try (Options options = new Options()) {
+
+			new CustomRocksDBConfig().setConfig("store", options, configs);
+
+			// 8 MB por store, la mitad para los buffers de escritura
+			assertEquals(Math.min(RocksDBProfile.MEMORY_CAPPED.getWriteBufferBytes(),
+					4 * MB / RocksDBProfile.MEMORY_CAPPED.getMaxWriteBuffers()), options.writeBufferSize());
+			assertEquals(RocksDBProfile.MEMORY_CAPPED.getMaxWriteBuffers(), options.maxWriteBufferNumber());
+		}
+	}
+}
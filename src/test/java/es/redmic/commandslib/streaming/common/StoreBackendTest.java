@@ -0,0 +1,61 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.junit.Test;
+
+public class StoreBackendTest {
+
+	private static final String STORE_NAME = "settings";
+
+	@Test
+	public void supplier_ReturnPersistentStore_IfBackendIsRocksDB() {
+
+		KeyValueBytesStoreSupplier supplier = StoreBackend.ROCKSDB.supplier(STORE_NAME, 10);
+
+		assertEquals(STORE_NAME, supplier.name());
+		assertTrue(supplier.get().persistent());
+	}
+
+	@Test
+	public void supplier_ReturnNotPersistentStore_IfBackendIsInMemory() {
+
+		KeyValueBytesStoreSupplier supplier = StoreBackend.IN_MEMORY.supplier(STORE_NAME, 10);
+
+		assertEquals(STORE_NAME, supplier.name());
+		assertFalse(supplier.get().persistent());
+	}
+
+	@Test
+	public void supplier_ReturnNotPersistentStore_IfBackendIsLRU() {
+
+		KeyValueBytesStoreSupplier supplier = StoreBackend.LRU.supplier(STORE_NAME, 10);
+
+		assertEquals(STORE_NAME, supplier.name());
+		assertFalse(supplier.get().persistent());
+	}
+}
@@ -0,0 +1,68 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+public class StreamsHealthIndicatorTest {
+
+	private BaseStreams getStreams(String serviceId, ReadinessState readiness) {
+
+		BaseStreams streams = Mockito.mock(BaseStreams.class);
+		when(streams.getServiceId()).thenReturn(serviceId);
+		when(streams.getReadiness()).thenReturn(readiness);
+		return streams;
+	}
+
+	@Test
+	public void health_ReturnUp_IfAllStreamsAreReady() {
+
+		Health health = new StreamsHealthIndicator(getStreams("store", ReadinessState.READY),
+				getStreams("events", ReadinessState.READY)).health();
+
+		assertEquals(Status.UP, health.getStatus());
+		assertEquals(ReadinessState.READY, health.getDetails().get("store"));
+	}
+
+	@Test
+	public void health_ReturnOutOfService_IfAnyStreamIsRestoring() {
+
+		Health health = new StreamsHealthIndicator(getStreams("store", ReadinessState.RESTORING),
+				getStreams("events", ReadinessState.READY)).health();
+
+		assertEquals(Status.OUT_OF_SERVICE, health.getStatus());
+	}
+
+	@Test
+	public void health_ReturnDown_IfAnyStreamHasFailed() {
+
+		Health health = new StreamsHealthIndicator(getStreams("store", ReadinessState.REBALANCING),
+				getStreams("events", ReadinessState.FAILED)).health();
+
+		assertEquals(Status.DOWN, health.getStatus());
+	}
+}
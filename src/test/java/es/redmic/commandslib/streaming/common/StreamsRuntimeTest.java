@@ -0,0 +1,94 @@
+package es.redmic.commandslib.streaming.common;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.TopologyDescription;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.redmic.commandslib.streaming.statestore.StateStore;
+
+public class StreamsRuntimeTest {
+
+	StreamsRuntime runtime;
+
+	@Before
+	public void setUp() {
+
+		runtime = new StreamsRuntime(getConfig("runtime", "runtime").build(), null);
+	}
+
+	private StreamConfig.Builder getConfig(String serviceId, String topic) {
+
+		// @formatter:off
+
+		return StreamConfig.Builder
+				.bootstrapServers("localhost:9092")
+				.schemaRegistry("http://localhost:8081")
+				.stateStoreDir("/tmp")
+				.topic(topic)
+				.serviceId(serviceId);
+
+		// @formatter:on
+	}
+
+	private StateStore registerStateStore(String serviceId, String topic) {
+
+		return new StateStore(getConfig(serviceId, topic).runtime(runtime).build(), null) {
+			{
+				init();
+			}
+		};
+	}
+
+	@Test
+	public void buildTopology_AddAllRegisteredStores_IfTopicsAreDifferent() {
+
+		registerStateStore("store1", "topic1");
+		registerStateStore("store2", "topic2");
+
+		StreamsBuilder builder = new StreamsBuilder();
+		runtime.buildTopology(builder);
+
+		TopologyDescription description = builder.build().describe();
+
+		assertEquals(2, runtime.getComponents().size());
+		assertEquals(2, description.globalStores().size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void start_ThrowException_IfStreamsShareTopic() {
+
+		registerStateStore("store1", "topic1");
+		registerStateStore("store2", "topic1");
+
+		runtime.start();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void start_ThrowException_IfThereAreNoStreams() {
+
+		runtime.start();
+	}
+}
@@ -0,0 +1,90 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import es.redmic.brokerlib.avro.common.Event;
+
+public class HeaderIndexTest {
+
+	HeaderIndex index;
+
+	@Before
+	public void setUp() {
+
+		index = new HeaderIndex();
+	}
+
+	private Event getEvent(String type, String userId) {
+
+		Event event = Mockito.mock(Event.class);
+		when(event.getType()).thenReturn(type);
+		when(event.getUserId()).thenReturn(userId);
+		return event;
+	}
+
+	@Test
+	public void get_ReturnNull_IfIndexIsNotReady() {
+
+		index.load("1", getEvent("SAVED", "13"));
+
+		assertNull(index.get("1"));
+	}
+
+	@Test
+	public void update_ReplaceOrRemoveHeader() {
+
+		index.setReady();
+
+		index.update("1", getEvent("SAVE", "13"));
+		index.update("1", getEvent("SAVED", "13"));
+		index.update("2", getEvent("SAVED", "99"));
+		index.update("2", null);
+
+		assertEquals("SAVED", index.get("1").getType());
+		assertEquals("13", index.get("1").getUserId());
+		assertNull(index.get("2"));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void load_IgnoreLoadedState_IfIdWasUpdatedWhileLoading() {
+
+		index.update("1", getEvent("SAVED", "13"));
+		index.update("2", null);
+
+		// Estados anteriores leídos por la carga inicial
+		index.load("1", getEvent("SAVE", "13"));
+		index.load("2", getEvent("SAVED", "13"));
+
+		index.setReady();
+
+		assertEquals("SAVED", index.get("1").getType());
+		assertNull(index.get("2"));
+	}
+}
@@ -0,0 +1,151 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class NearCacheTest {
+
+	Map<String, String> store;
+
+	AtomicInteger loads;
+
+	@Before
+	public void setUp() {
+
+		store = new HashMap<>();
+		store.put("a", "1");
+		store.put("b", "22");
+		store.put("c", "333");
+
+		loads = new AtomicInteger();
+	}
+
+	private String load(String key) {
+
+		loads.incrementAndGet();
+		return store.get(key);
+	}
+
+	@Test
+	public void get_ReturnCachedValue_IfKeyWasLoaded() {
+
+		NearCache<String, String> cache = new NearCache<>(10, value -> 1);
+
+		assertEquals("1", cache.get("a", this::load));
+		assertEquals("1", cache.get("a", this::load));
+
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void get_NotCacheNullValues() {
+
+		NearCache<String, String> cache = new NearCache<>(10, value -> 1);
+
+		assertNull(cache.get("x", this::load));
+		assertNull(cache.get("x", this::load));
+
+		assertEquals(2, loads.get());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void get_EvictLeastRecentlyUsed_IfMaxWeightIsExceeded() {
+
+		NearCache<String, String> cache = new NearCache<>(5, String::length);
+
+		cache.get("a", this::load);
+		cache.get("b", this::load);
+		// "a" pasa a ser la más usada
+		cache.get("a", this::load);
+		cache.get("c", this::load);
+
+		assertEquals(2, cache.size());
+		assertEquals(4, cache.getWeight());
+		assertEquals(1, cache.getEvictionCount());
+
+		loads.set(0);
+		cache.get("a", this::load);
+		cache.get("c", this::load);
+		assertEquals(0, loads.get());
+
+		cache.get("b", this::load);
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void get_ReturnUpdatedValue_IfKeyWasInvalidated() {
+
+		NearCache<String, String> cache = new NearCache<>(10, value -> 1);
+
+		cache.get("a", this::load);
+
+		store.put("a", "2");
+		cache.invalidate("a");
+
+		assertEquals("2", cache.get("a", this::load));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void get_NotCacheLoadedValue_IfKeyIsInvalidatedWhileLoading() {
+
+		NearCache<String, String> cache = new NearCache<>(10, value -> 1);
+
+		String value = cache.get("a", key -> {
+			String old = store.get(key);
+			// Actualización concurrente del store durante la carga
+			store.put(key, "2");
+			cache.invalidate(key);
+			return old;
+		});
+
+		assertEquals("1", value);
+		assertEquals(0, cache.size());
+		assertEquals("2", cache.get("a", this::load));
+	}
+
+	@Test
+	public void invalidateAll_RemoveAllEntries() {
+
+		NearCache<String, String> cache = new NearCache<>(10, value -> 1);
+
+		cache.get("a", this::load);
+		cache.get("b", this::load);
+
+		cache.invalidateAll();
+
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+}
@@ -0,0 +1,97 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class ScalableBloomFilterTest {
+
+	@Test
+	public void mightContain_ReturnFalse_IfKeyWasNotAdded() {
+
+		ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+
+		assertFalse(filter.mightContain("id"));
+	}
+
+	@Test
+	public void mightContain_ReturnTrue_ForAllAddedKeys() {
+
+		ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+
+		for (int i = 0; i < 10000; i++)
+			filter.add("id-" + i);
+
+		for (int i = 0; i < 10000; i++)
+			assertTrue(filter.mightContain("id-" + i));
+	}
+
+	@Test
+	public void add_AddNewFilter_IfCapacityIsExceeded() {
+
+		ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+
+		for (int i = 0; i < 100; i++)
+			filter.add("id-" + i);
+
+		assertEquals(1, filter.getFilterCount());
+
+		filter.add(UUID.randomUUID().toString());
+
+		assertEquals(2, filter.getFilterCount());
+	}
+
+	@Test
+	public void add_NotCountRepeatedKeys() {
+
+		ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+
+		filter.add("id");
+		filter.add("id");
+
+		assertEquals(1, filter.getCount());
+	}
+
+	@Test
+	public void mightContain_KeepFalsePositiveRate_IfFilterGrows() {
+
+		ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+
+		for (int i = 0; i < 50000; i++)
+			filter.add(UUID.randomUUID().toString());
+
+		int falsePositives = 0, lookups = 50000;
+
+		for (int i = 0; i < lookups; i++) {
+			if (filter.mightContain(UUID.randomUUID().toString()))
+				falsePositives++;
+		}
+
+		assertTrue(falsePositives < lookups * 0.02);
+	}
+}
@@ -0,0 +1,108 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import es.redmic.brokerlib.avro.common.Event;
+
+public class SecondaryIndexTest {
+
+	SecondaryIndex index;
+
+	@Before
+	public void setUp() {
+
+		index = new SecondaryIndex("userId", Event::getUserId);
+	}
+
+	private Event getEvent(String userId) {
+
+		Event event = Mockito.mock(Event.class);
+		when(event.getUserId()).thenReturn(userId);
+		return event;
+	}
+
+	@Test
+	public void update_IndexIdByKey() {
+
+		index.setReady();
+
+		index.update("1", getEvent("13"));
+		index.update("2", getEvent("13"));
+		index.update("3", getEvent("99"));
+
+		assertEquals(new HashSet<>(Arrays.asList("1", "2")), index.getIds("13"));
+		assertEquals(new HashSet<>(Arrays.asList("3")), index.getIds("99"));
+	}
+
+	@Test
+	public void update_MoveId_IfKeyChanges() {
+
+		index.setReady();
+
+		index.update("1", getEvent("13"));
+		index.update("1", getEvent("99"));
+
+		assertTrue(index.getIds("13").isEmpty());
+		assertEquals(new HashSet<>(Arrays.asList("1")), index.getIds("99"));
+	}
+
+	@Test
+	public void update_RemoveId_IfItemIsDeletedOrNotIndexable() {
+
+		index.setReady();
+
+		index.update("1", getEvent("13"));
+		index.update("2", getEvent("13"));
+
+		index.update("1", null);
+		index.update("2", getEvent(null));
+
+		assertTrue(index.getIds("13").isEmpty());
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void load_IgnoreLoadedState_IfIdWasUpdatedWhileLoading() {
+
+		index.update("1", getEvent("99"));
+
+		// Estado anterior leído por la carga inicial
+		index.load("1", getEvent("13"));
+		index.load("2", getEvent("13"));
+
+		index.setReady();
+
+		assertEquals(new HashSet<>(Arrays.asList("2")), index.getIds("13"));
+		assertEquals(new HashSet<>(Arrays.asList("1")), index.getIds("99"));
+	}
+}
@@ -0,0 +1,173 @@
+package es.redmic.commandslib.streaming.statestore;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import es.redmic.brokerlib.avro.common.Event;
+import es.redmic.commandslib.streaming.common.StreamConfig;
+
+public class StateStoreQueryTest {
+
+	TreeMap<String, Event> data;
+
+	AtomicBoolean iteratorClosed;
+
+	StateStore stateStore;
+
+	@Before
+	public void setUp() {
+
+		data = new TreeMap<>();
+
+		for (String key : Arrays.asList("user1-a", "user1-b", "user2-a", "user3-a"))
+			data.put(key, Mockito.mock(Event.class));
+
+		iteratorClosed = new AtomicBoolean();
+
+		// @formatter:off
+
+		StreamConfig config = StreamConfig.Builder
+				.bootstrapServers("localhost:9092")
+				.schemaRegistry("http://localhost:8081")
+				.stateStoreDir("/tmp")
+				.topic("topic")
+				.serviceId("service")
+				.build();
+
+		// @formatter:on
+
+		stateStore = new StateStore(config, null) {
+
+			@Override
+			protected KafkaStreams processStreams() {
+				return null;
+			}
+		};
+		stateStore.store = new InMemoryStore();
+	}
+
+	@Test
+	public void getAll_ReturnFoundItemsSortedByKey() {
+
+		Map<String, Event> result = stateStore.getAll(Arrays.asList("user2-a", "unknown", "user1-a", "user2-a"));
+
+		assertEquals(Arrays.asList("user1-a", "user2-a"), result.keySet().stream().collect(Collectors.toList()));
+		assertEquals(data.get("user2-a"), result.get("user2-a"));
+	}
+
+	@Test
+	public void getByPrefix_ReturnOnlyKeysWithPrefix() {
+
+		List<String> keys;
+
+		try (Stream<KeyValue<String, Event>> items = stateStore.streamByPrefix("user1-")) {
+			keys = items.map(item -> item.key).collect(Collectors.toList());
+		}
+
+		assertEquals(Arrays.asList("user1-a", "user1-b"), keys);
+		assertTrue(iteratorClosed.get());
+	}
+
+	@Test
+	public void getRange_ReturnKeysBetweenBoundsIncluded() {
+
+		List<String> keys;
+
+		try (Stream<KeyValue<String, Event>> items = stateStore.streamRange("user1-b", "user2-a")) {
+			keys = items.map(item -> item.key).collect(Collectors.toList());
+		}
+
+		assertEquals(Arrays.asList("user1-b", "user2-a"), keys);
+	}
+
+	private class InMemoryStore implements ReadOnlyKeyValueStore<String, Event> {
+
+		@Override
+		public Event get(String key) {
+			return data.get(key);
+		}
+
+		@Override
+		public KeyValueIterator<String, Event> range(String from, String to) {
+			return new Iter(data.subMap(from, true, to, true).entrySet().iterator());
+		}
+
+		@Override
+		public KeyValueIterator<String, Event> all() {
+			return new Iter(data.entrySet().iterator());
+		}
+
+		@Override
+		public long approximateNumEntries() {
+			return data.size();
+		}
+	}
+
+	private class Iter implements KeyValueIterator<String, Event> {
+
+		Iterator<Map.Entry<String, Event>> it;
+
+		Iter(Iterator<Map.Entry<String, Event>> it) {
+			this.it = it;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public KeyValue<String, Event> next() {
+			Map.Entry<String, Event> entry = it.next();
+			return KeyValue.pair(entry.getKey(), entry.getValue());
+		}
+
+		@Override
+		public void close() {
+			iteratorClosed.set(true);
+		}
+
+		@Override
+		public String peekNextKey() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package es.redmic.commandslib.streaming.streams;
+
+/*-
+ * #%L
+ * commands-lib
+ * %%
+ * Copyright (C) 2019 REDMIC Project / Server
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.TopologyDescription;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.junit.Test;
+
+import es.redmic.brokerlib.avro.common.Event;
+import es.redmic.commandslib.streaming.common.StreamConfig;
+
+public class EventSourcingStreamsTest {
+
+	@Test
+	public void buildTopology_CallOverriddenProcess_IfTypeRoutingIsEnabled() {
+
+		TestStreams streams = new TestStreams(getConfig(true));
+
+		streams.buildTopology(new StreamsBuilder());
+
+		assertTrue(streams.updateFailedProcessed);
+	}
+
+	@Test
+	public void buildTopology_UseRoutedSubstreams_IfTypeRoutingIsEnabled() {
+
+		StreamsBuilder builder = new StreamsBuilder();
+
+		new TestStreams(getConfig(true)).buildTopology(builder);
+
+		// Solo los filtros de los eventos creados y modificados, sin filtrar por tipo
+		assertEquals(1, countNodes(builder, "KSTREAM-BRANCH-"));
+		assertEquals(2, countNodes(builder, "KSTREAM-FILTER-"));
+	}
+
+	@Test
+	public void buildTopology_FilterByType_IfTypeRoutingIsDisabled() {
+
+		StreamsBuilder builder = new StreamsBuilder();
+
+		TestStreams streams = new TestStreams(getConfig(false));
+		streams.buildTopology(builder);
+
+		assertTrue(streams.updateFailedProcessed);
+		assertEquals(0, countNodes(builder, "KSTREAM-BRANCH-"));
+		assertEquals(9, countNodes(builder, "KSTREAM-FILTER-"));
+	}
+
+	private int countNodes(StreamsBuilder builder, String prefix) {
+
+		int count = 0;
+
+		for (TopologyDescription.Subtopology subtopology : builder.build().describe().subtopologies()) {
+			for (TopologyDescription.Node node : subtopology.nodes()) {
+				if (node.name().startsWith(prefix))
+					count++;
+			}
+		}
+		return count;
+	}
+
+	private StreamConfig getConfig(boolean typeRouting) {
+
+		// @formatter:off
+
+		return StreamConfig.Builder
+				.bootstrapServers("localhost:9092")
+				.schemaRegistry("http://localhost:8081")
+				.stateStoreDir("/tmp")
+				.topic("topic")
+				.serviceId("service")
+				.typeRouting(typeRouting)
+				.build();
+
+		// @formatter:on
+	}
+
+	private static class TestStreams extends EventSourcingStreams {
+
+		boolean updateFailedProcessed;
+
+		TestStreams(StreamConfig config) {
+			super(config, null);
+		}
+
+		@Override
+		protected void processUpdateFailedStream(KStream<String, Event> events,
+				KTable<String, Event> successEventsTable) {
+
+			updateFailedProcessed = true;
+			super.processUpdateFailedStream(events, successEventsTable);
+		}
+
+		@Override
+		protected void forwardSnapshotEvents(KStream<String, Event> events) {
+		}
+
+		@Override
+		protected void createExtraStreams() {
+		}
+
+		@Override
+		protected void processEnrichCreateSteam(KStream<String, Event> events) {
+		}
+
+		@Override
+		protected Event getCreatedEvent(Event confirmedEvent, Event requestEvent) {
+			return null;
+		}
+
+		@Override
+		protected void processEnrichUpdateSteam(KStream<String, Event> events) {
+		}
+
+		@Override
+		protected Event getUpdatedEvent(Event confirmedEvent, Event requestEvent) {
+			return null;
+		}
+
+		@Override
+		protected void processDeleteStream(KStream<String, Event> events) {
+		}
+
+		@Override
+		protected void processPartialUpdatedStream(KStream<String, Event> vesselEvents,
+				KStream<String, Event> updateConfirmedEvents) {
+		}
+
+		@Override
+		protected Event getUpdateCancelledEvent(Event failedEvent, Event lastSuccessEvent) {
+			return null;
+		}
+
+		@Override
+		protected Event getDeleteCancelledEvent(Event failedEvent, Event lastSuccessEvent) {
+			return null;
+		}
+
+		@Override
+		protected void processExtraStreams(KStream<String, Event> events, KTable<String, Event> successEventsTable) {
+		}
+
+		@Override
+		protected Event getRollbackEvent(Event prepareRollbackEvent, Event lastSuccessEvent) {
+			return null;
+		}
+	}
+}
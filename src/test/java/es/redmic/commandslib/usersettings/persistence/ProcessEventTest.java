@@ -24,18 +24,26 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.UUID;
 
+import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import es.redmic.brokerlib.avro.common.EventTypes;
+import es.redmic.commandslib.exceptions.HistoryNotFoundException;
 import es.redmic.commandslib.exceptions.ItemLockedException;
+import es.redmic.commandslib.streaming.statestore.EventHeader;
 import es.redmic.commandslib.usersettings.aggregate.PersistenceAggregate;
 import es.redmic.commandslib.usersettings.commands.CloneSettingsCommand;
 import es.redmic.commandslib.usersettings.commands.DeleteSettingsCommand;
@@ -99,6 +107,17 @@ public class ProcessEventTest {
 		assertTrue(evt.getVersion().equals(1));
 	}
 
+	@Test
+	public void processSaveSettingsCommand_ReadStateOnce_IfItemExists() {
+
+		when(settingsStateStore.get(any())).thenReturn(SettingsDataUtil.getSettingsSavedEvent(code));
+
+		PartialSaveSettingsEvent evt = agg.process(new SaveSettingsCommand(SettingsDataUtil.getPersistenceDTO(code)));
+
+		assertNotNull(evt);
+		verify(settingsStateStore, times(1)).get(any());
+	}
+
 	@Test
 	public void processUpdateSettingsCommand_ReturnSaveEvent_IfProcessIsOk() {
 
@@ -120,6 +139,84 @@ public class ProcessEventTest {
 		assertTrue(evt.getVersion().equals(2));
 	}
 
+	// Editar un elemento bloqueado conocido por su cabecera
+	@Test
+	public void processUpdateSettingsCommand_ThrowItemLockedExceptionWithoutReadingState_IfHeaderIsLocked() {
+
+		when(settingsStateStore.getHeader(any()))
+				.thenReturn(new EventHeader(SettingsEventTypes.SAVE, code, 1, "13", DateTime.now()));
+
+		try {
+			agg.process(new UpdateSettingsCommand(SettingsDataUtil.getPersistenceDTO(code)));
+			fail("Debe lanzar ItemLockedException");
+		} catch (ItemLockedException e) {
+			verify(settingsStateStore, never()).get(any());
+		}
+	}
+
+	// Editar un elemento de otro usuario conocido por su cabecera
+	@Test
+	public void processUpdateSettingsCommand_ThrowForbiddenExceptionWithoutReadingState_IfHeaderIsFromAnotherUser() {
+
+		when(settingsStateStore.getHeader(any()))
+				.thenReturn(new EventHeader(SettingsEventTypes.SAVED, code, 1, "99", DateTime.now()));
+
+		try {
+			agg.process(new UpdateSettingsCommand(SettingsDataUtil.getPersistenceDTO(code)));
+			fail("Debe lanzar SettingsChangeForbiddenException");
+		} catch (SettingsChangeForbiddenException e) {
+			verify(settingsStateStore, never()).get(any());
+		}
+	}
+
+	// Editar un elemento borrado de otro usuario conocido por su cabecera. El
+	// borrado se comprueba antes que la autoría, como sin cabecera
+	@Test(expected = ItemNotFoundException.class)
+	public void processUpdateSettingsCommand_ThrowItemNotFoundException_IfHeaderIsDeleted() {
+
+		when(settingsStateStore.getHeader(any()))
+				.thenReturn(new EventHeader(EventTypes.DELETED, code, 2, "99", DateTime.now()));
+		when(settingsStateStore.get(any())).thenReturn(SettingsDataUtil.getSettingsDeletedEvent(code));
+
+		agg.process(new UpdateSettingsCommand(SettingsDataUtil.getPersistenceDTO(code)));
+	}
+
+	// Editar un elemento eliminado del store después de leer su cabecera
+	@Test(expected = HistoryNotFoundException.class)
+	public void processUpdateSettingsCommand_ThrowHistoryNotFoundException_IfItemIsRemovedAfterHeader() {
+
+		when(settingsStateStore.getHeader(any()))
+				.thenReturn(new EventHeader(SettingsEventTypes.SAVED, code, 1, "13", DateTime.now()));
+		when(settingsStateStore.get(any())).thenReturn(null);
+
+		agg.process(new UpdateSettingsCommand(SettingsDataUtil.getPersistenceDTO(code)));
+	}
+
+	// Guardar un elemento eliminado del store después de leer su cabecera
+	@Test
+	public void processSaveSettingsCommand_ReturnSaveEvent_IfItemIsRemovedAfterHeader() {
+
+		when(settingsStateStore.getHeader(any()))
+				.thenReturn(new EventHeader(SettingsEventTypes.SAVED, code, 1, "13", DateTime.now()));
+		when(settingsStateStore.get(any())).thenReturn(null);
+
+		PartialSaveSettingsEvent evt = agg.process(new SaveSettingsCommand(SettingsDataUtil.getPersistenceDTO(code)));
+
+		assertNotNull(evt);
+		assertTrue(evt.getVersion().equals(1));
+	}
+
+	// Editar un elemento bloqueado después de leer su cabecera
+	@Test(expected = ItemLockedException.class)
+	public void processUpdateSettingsCommand_ThrowItemLockedException_IfItemIsLockedAfterHeader() {
+
+		when(settingsStateStore.getHeader(any()))
+				.thenReturn(new EventHeader(SettingsEventTypes.SAVED, code, 1, "13", DateTime.now()));
+		when(settingsStateStore.get(any())).thenReturn(SettingsDataUtil.getSaveSettingsEvent(code));
+
+		agg.process(new UpdateSettingsCommand(SettingsDataUtil.getPersistenceDTO(code)));
+	}
+
 	// Editar un elemento ya borrado
 	@Test(expected = ItemNotFoundException.class)
 	public void processUpdateSettingsCommand_ThrowItemNotFoundException_IfItemIsDeleted() {
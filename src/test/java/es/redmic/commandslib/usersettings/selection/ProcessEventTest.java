@@ -8,6 +8,7 @@ import static org.mockito.Mockito.when;
 
 import java.util.UUID;
 
+import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -35,8 +36,10 @@ import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import es.redmic.brokerlib.avro.common.EventTypes;
 import es.redmic.commandslib.exceptions.HistoryNotFoundException;
 import es.redmic.commandslib.exceptions.ItemLockedException;
+import es.redmic.commandslib.streaming.statestore.EventHeader;
 import es.redmic.commandslib.usersettings.aggregate.SelectionAggregate;
 import es.redmic.commandslib.usersettings.commands.ClearCommand;
 import es.redmic.commandslib.usersettings.commands.DeselectCommand;
@@ -163,6 +166,29 @@ public class ProcessEventTest {
 		agg.process(new DeselectCommand(SettingsDataUtil.getSelectionDTO(code)));
 	}
 
+	// Deseleccionar un item borrado de otro usuario conocido por su cabecera. Se
+	// mantiene el tratamiento del aggregate para los items borrados
+	@Test(expected = ItemLockedException.class)
+	public void processDeselectCommand_ThrowItemLockedException_IfHeaderIsDeleted() {
+
+		when(settingsStateStore.getHeader(any()))
+				.thenReturn(new EventHeader(EventTypes.DELETED, code, 2, "99", DateTime.now()));
+		when(settingsStateStore.get(any())).thenReturn(SettingsDataUtil.getSettingsDeletedEvent(code));
+
+		agg.process(new DeselectCommand(SettingsDataUtil.getSelectionDTO(code)));
+	}
+
+	// Limpiar la selección de un item borrado conocido por su cabecera
+	@Test(expected = ItemLockedException.class)
+	public void processClearCommand_ThrowItemLockedException_IfHeaderIsDeleted() {
+
+		when(settingsStateStore.getHeader(any()))
+				.thenReturn(new EventHeader(EventTypes.DELETED, code, 2, "99", DateTime.now()));
+		when(settingsStateStore.get(any())).thenReturn(SettingsDataUtil.getSettingsDeletedEvent(code));
+
+		agg.process(new ClearCommand(SettingsDataUtil.getSelectionDTO(code)));
+	}
+
 	// Deseleccionar un item con una selección que no existe
 	@Test(expected = HistoryNotFoundException.class)
 	public void processClearCommand_ThrowItemNotFoundException_IfItemNotExist() {